@@ -19,33 +19,32 @@
  */
 package com.xwiki.jirapro.issuecreate.internal;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.contrib.jira.config.JIRAAuthenticator;
 import org.xwiki.contrib.jira.config.JIRAConfiguration;
 import org.xwiki.contrib.jira.config.JIRAServer;
 import org.xwiki.contrib.jira.config.internal.BasicAuthJIRAAuthenticator;
 import org.xwiki.text.StringUtils;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.web.XWikiRequest;
 
@@ -79,15 +78,16 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
 
     private static final String URL = "url";
 
-    private static final String ISSUE_TYPE = "issuetype";
+    private static final String ID = "id";
 
-    private static final String PROJECT = "project";
+    private static final String VALUES = "values";
 
-    private static final String ID = "id";
+    private static final int MAX_PROJECT_SUGGESTIONS = 6;
 
-    private static final String KEY = "key";
+    private static final String MAX_ISSUE_SIZE_PROPERTY = "jirapro.issuecreate.maxIssueSize";
+
+    private static final int DEFAULT_MAX_ISSUE_SIZE = 10 * 1024 * 1024;
 
-    private static final String VALUES = "values";
 
     @Inject
     private JIRAConfiguration jiraConfiguration;
@@ -95,9 +95,31 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
     @Inject
     private Logger logger;
 
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
     @Inject
     private Provider<XWikiContext> xcontextProvider;
 
+    @Inject
+    private JiraHttpClientRegistry httpClientRegistry;
+
+    @Inject
+    private JiraJSONMapper jsonMapper;
+
+    @Inject
+    private JiraProjectPermissionResolver projectPermissionResolver;
+
+    @Inject
+    private JiraProjectCatalog projectCatalog;
+
+    @Inject
+    private JiraFieldsMetadataCache fieldsMetadataCache;
+
+    @Inject
+    private JiraUserCache userCache;
+
     /**
      * {@inheritDoc}
      * 
@@ -115,7 +137,7 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
             res.add(resEntry);
         }
 
-        return asJSON(res);
+        return jsonMapper.asJSON(res);
     }
 
     /**
@@ -145,53 +167,56 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
     {
         String lowercaseText = text.toLowerCase();
 
-        List<Map<String, Object>> res = new ArrayList<>();
-
-        JsonNode jsonTree = asTree(getJiraIssueCreationRestClient(instanceId).getProjects());
-        if (!jsonTree.isArray()) {
-            throw new JiraIssueCreationException("Expected a JSON array in Jira response.");
-        }
-
-        for (JsonNode projectJSON : jsonTree) {
-            if (res.size() > 5) {
-                break;
-            }
-
-            Map<String, Object> resEntry = new TreeMap<>();
-
-            String name = projectJSON.get(NAME).asText();
-            String key = projectJSON.get(KEY).asText();
+        JiraIssueCreationRestClient restClient = getJiraIssueCreationRestClient(instanceId);
+        String identityKey = getIdentityKey(instanceId, restClient.getJiraServer());
+        List<JiraProject> projects = projectCatalog.getProjects(restClient, identityKey);
 
-            if (!(name.toLowerCase().contains(lowercaseText) || key.toLowerCase().contains(lowercaseText))) {
-                continue;
+        List<JiraProject> candidates = new ArrayList<>();
+        for (JiraProject project : projects) {
+            if (project.getName().toLowerCase().contains(lowercaseText)
+                || project.getKey().toLowerCase().contains(lowercaseText))
+            {
+                candidates.add(project);
             }
+        }
 
-            // Check for issue creation permission.
-            try {
-                getJiraIssueCreationRestClient(instanceId).getIssueTypes(key);
-            } catch (JiraIssueCreationException e) {
-                continue;
-            }
+        List<Map<String, Object>> res = new ArrayList<>();
 
-            String iconURL = null;
-            JsonNode avatarUrls = projectJSON.get(AVATAR_URLS);
-            if (avatarUrls != null) {
-                for (JsonNode iconJSON : avatarUrls) {
-                    iconURL = iconJSON.asText();
+        // Check for issue creation permission, a batch of candidates at a time.
+        for (int start = 0; start < candidates.size() && res.size() < MAX_PROJECT_SUGGESTIONS;
+            start += MAX_PROJECT_SUGGESTIONS)
+        {
+            List<JiraProject> batch =
+                candidates.subList(start, Math.min(candidates.size(), start + MAX_PROJECT_SUGGESTIONS));
+            List<String> batchKeys = new ArrayList<>();
+            batch.forEach(project -> batchKeys.add(project.getKey()));
+            Map<String, Boolean> permissions =
+                projectPermissionResolver.canCreateIssues(restClient, identityKey, batchKeys);
+
+            for (JiraProject project : batch) {
+                if (res.size() >= MAX_PROJECT_SUGGESTIONS) {
                     break;
                 }
+                if (Boolean.TRUE.equals(permissions.get(project.getKey()))) {
+                    res.add(getProjectSuggestion(project));
+                }
             }
+        }
 
-            resEntry.put(LABEL, name + ' ' + '(' + key + ')');
-            resEntry.put(VALUE, key);
-            if (iconURL != null) {
-                resEntry.put(ICON, Collections.singletonMap(URL, iconURL));
-            }
+        return jsonMapper.asJSON(res);
+    }
 
-            res.add(resEntry);
+    private Map<String, Object> getProjectSuggestion(JiraProject project)
+    {
+        Map<String, Object> resEntry = new TreeMap<>();
+
+        resEntry.put(LABEL, project.getName() + ' ' + '(' + project.getKey() + ')');
+        resEntry.put(VALUE, project.getKey());
+        if (project.getAvatarURL() != null) {
+            resEntry.put(ICON, Collections.singletonMap(URL, project.getAvatarURL()));
         }
 
-        return asJSON(res);
+        return resEntry;
     }
 
     /**
@@ -202,7 +227,7 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
     public String suggestIssueType(String instanceId, String project, String text)
     {
 
-        JsonNode jsonTree = asTree(getJiraIssueCreationRestClient(instanceId).getIssueTypes(project));
+        JsonNode jsonTree = jsonMapper.asTree(getJiraIssueCreationRestClient(instanceId).getIssueTypes(project));
 
         JsonNode valuesTree = jsonTree.get(VALUES);
         if (valuesTree == null) {
@@ -243,7 +268,7 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
             res.add(resEntry);
         }
 
-        return asJSON(res);
+        return jsonMapper.asJSON(res);
     }
 
     /**
@@ -253,7 +278,8 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
      */
     public String suggestAssignableUser(String instanceId, String project, String text)
     {
-        JsonNode jsonTree = asTree(getJiraIssueCreationRestClient(instanceId).getAssignableUsers(project, text));
+        JsonNode jsonTree =
+            jsonMapper.asTree(getJiraIssueCreationRestClient(instanceId).getAssignableUsers(project, text));
         return suggestUser(jsonTree);
     }
 
@@ -264,7 +290,7 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
      */
     public String suggestUser(String instanceId, String text)
     {
-        JsonNode jsonTree = asTree(getJiraIssueCreationRestClient(instanceId).getUsers(text));
+        JsonNode jsonTree = jsonMapper.asTree(getJiraIssueCreationRestClient(instanceId).getUsers(text));
         return suggestUser(jsonTree);
     }
 
@@ -309,7 +335,7 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
             res.add(resEntry);
         }
 
-        return asJSON(res);
+        return jsonMapper.asJSON(res);
     }
 
     /**
@@ -319,7 +345,9 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
      */
     public String getFieldsMetadata(String instanceId, String project, String issueType)
     {
-        return getJiraIssueCreationRestClient(instanceId).getFieldsMetadata(project, issueType);
+        JiraIssueCreationRestClient restClient = getJiraIssueCreationRestClient(instanceId);
+        return fieldsMetadataCache.getFieldsMetadata(restClient, getIdentityKey(instanceId, restClient.getJiraServer()),
+            project, issueType);
     }
 
     /**
@@ -329,81 +357,86 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
      */
     public String createIssue(String instanceId, String inputData)
     {
+        long startTime = System.nanoTime();
 
-        String inputJsonText = inputData;
+        JiraIssueCreationRestClient restClient = getJiraIssueCreationRestClient(instanceId);
+        String identityKey = getIdentityKey(instanceId, restClient.getJiraServer());
 
-        if (StringUtils.isEmpty(inputData)) {
-            XWikiContext xcontext = xcontextProvider.get();
-            XWikiRequest request = xcontext.getRequest();
-            InputStream inputStream;
-            try {
-                inputStream = request.getInputStream();
-            } catch (IOException e) {
-                throw new JiraIssueCreationException("Could not retrieve POST data.", e);
-            }
-            BufferedReader bufferReader = new BufferedReader(new InputStreamReader(inputStream));
-            StringBuilder stringBuilder = new StringBuilder();
-            bufferReader.lines().forEach(line -> {
-                stringBuilder.append(line);
-            });
+        // The reporter doesn't depend on the issue, look it up while the input is being parsed.
+        CompletableFuture<String> reporterUserName = getReporterUserNameAsync(restClient, identityKey);
 
-            inputJsonText = stringBuilder.toString();
-        }
+        byte[] inputContent =
+            StringUtils.isEmpty(inputData) ? readRequestBody() : inputData.getBytes(StandardCharsets.UTF_8);
+        JiraIssueInput input = JiraIssueInput.parse(inputContent, jsonMapper.getFactory());
 
-        JsonNode inputTree = asTree(inputJsonText);
+        long parsedTime = System.nanoTime();
 
-        JsonNode fieldsTree = inputTree.get("fields");
-        if (fieldsTree == null) {
-            throw new JiraIssueCreationException("Invalid Input Data.");
-        }
+        String reporter = JiraIssueCreationRestClient.await(getNeededReporterAsync(restClient, identityKey,
+            input.getProject(), input.getIssueType(), reporterUserName));
 
-        JsonNode issueTypeTree = fieldsTree.get(ISSUE_TYPE);
-        JsonNode projectTree = fieldsTree.get(PROJECT);
-        JsonNode reporterTree = fieldsTree.get(REPORTER);
+        long resolvedTime = System.nanoTime();
 
-        if (issueTypeTree == null) {
-            throw new JiraIssueCreationException("Missing issuetype field.");
-        }
+        // The reporter is added to the issue fields while the input is copied to the request.
+        String result = restClient.postIssue(input.toEntity(reporter));
 
-        if (projectTree == null) {
-            throw new JiraIssueCreationException("Missing project field.");
+        if (logger.isDebugEnabled()) {
+            long postedTime = System.nanoTime();
+            logger.debug("Created a Jira issue on [{}] in [{}] ms: input parsed in [{}] ms,"
+                + " reporter resolved in [{}] ms, issue posted in [{}] ms.", instanceId,
+                toMillis(postedTime - startTime), toMillis(parsedTime - startTime),
+                toMillis(resolvedTime - parsedTime), toMillis(postedTime - resolvedTime));
         }
 
-        if (reporterTree != null) {
-            throw new JiraIssueCreationException("Unexpected reporter field.");
-        }
+        return result;
+    }
 
-        JsonNode issueTypeIdTree = issueTypeTree.get(ID);
-        JsonNode projectKeyTree = projectTree.get(KEY);
+    /**
+     * Read the issue data posted to the current request, up to the configured maximum size.
+     * 
+     * @return the issue data
+     */
+    private byte[] readRequestBody()
+    {
+        int maxSize = configuration.getProperty(MAX_ISSUE_SIZE_PROPERTY, DEFAULT_MAX_ISSUE_SIZE);
 
-        if (issueTypeIdTree == null || !issueTypeIdTree.isTextual()) {
-            throw new JiraIssueCreationException("Invalid issueType field.");
+        XWikiRequest request = xcontextProvider.get().getRequest();
+        try {
+            return JiraIssueInput.read(request.getInputStream(), request.getContentLengthLong(), maxSize);
+        } catch (IOException e) {
+            throw new JiraIssueCreationException("Could not retrieve POST data.", e);
         }
+    }
 
-        if (projectKeyTree == null || !projectKeyTree.isTextual()) {
-            throw new JiraIssueCreationException("Invalid project field.");
+    /**
+     * Resolve the reporter to set on the issue. The fields metadata is fetched at the same time as the reporter user
+     * name is being resolved, unless we already know there is no reporter to set.
+     * 
+     * @return the reporter user name, or {@code null} if the reporter field shouldn't be set
+     */
+    private CompletableFuture<String> getNeededReporterAsync(JiraIssueCreationRestClient restClient,
+        String identityKey, String project, String issueType, CompletableFuture<String> reporterUserName)
+    {
+        // Do not include a reporter field when we don't know the reporter username.
+        if (reporterUserName.isDone() && !reporterUserName.isCompletedExceptionally()
+            && reporterUserName.getNow(null) == null)
+        {
+            return reporterUserName;
         }
 
-        String issueType = issueTypeIdTree.asText();
-        String project = projectKeyTree.asText();
+        CompletableFuture<String> fieldsMetadata =
+            fieldsMetadataCache.getFieldsMetadataAsync(restClient, identityKey, project, issueType);
 
-        ObjectNode fields = (ObjectNode) fieldsTree;
-        if (isReporterNeeded(instanceId, project, issueType)) {
-            JsonNode reporterField = asTree(asJSON(Collections.singletonMap(NAME, getReporterUserName(instanceId))));
-            fields.set(REPORTER, reporterField);
-        }
-
-        return getJiraIssueCreationRestClient(instanceId).postIssue(asJSON(inputTree));
+        return reporterUserName.thenCompose(reporter -> {
+            if (reporter == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return fieldsMetadata.thenApply(metadata -> hasReporterField(metadata) ? reporter : null);
+        });
     }
 
-    private boolean isReporterNeeded(String instanceId, String project, String issueType)
+    private boolean hasReporterField(String fieldsMetadata)
     {
-        // Do not include a reporter field when we don't know the reporter username.
-        if (getReporterUserName(instanceId) == null) {
-            return false;
-        }
-
-        JsonNode fieldsMetadataTree = asTree(getFieldsMetadata(instanceId, project, issueType));
+        JsonNode fieldsMetadataTree = jsonMapper.asTree(fieldsMetadata);
         if (fieldsMetadataTree == null) {
             throw new JiraIssueCreationException("Invalid fieldsMetadata JSON.");
         }
@@ -437,50 +470,56 @@ public class DefaultJiraIssueCreationManager implements JiraIssueCreationManager
     /**
      * Gets the reporter username.
      * 
-     * @param instanceId the instance for which the username should be checked against
+     * @param restClient the REST client of the instance for which the username should be checked against
+     * @param identityKey identifies the Jira server and the identity the requests are sent with
      * @return the username or null if the reporter field shouldn't be set.
      */
-    private String getReporterUserName(String instanceId)
+    private CompletableFuture<String> getReporterUserNameAsync(JiraIssueCreationRestClient restClient,
+        String identityKey)
     {
-        JIRAServer jiraServer = jiraConfiguration.getJIRAServers().get(instanceId);
-        Optional<JIRAAuthenticator> authenticator = jiraServer.getJiraAuthenticator();
+        Optional<JIRAAuthenticator> authenticator = restClient.getJiraServer().getJiraAuthenticator();
         if (authenticator.isPresent() && authenticator.get() instanceof BasicAuthJIRAAuthenticator) {
-            String userName = xcontextProvider.get().getUserReference().getName();
-
-            String jiraResponse = getJiraIssueCreationRestClient(instanceId).getUser(userName);
-
-            JsonNode jiraUser = asTree(jiraResponse);
-
-            if (jiraUser.has(NAME)) {
-                return jiraUser.get(NAME).asText();
-            }
+            // With basic authentication the identity key designates the Jira server only.
+            return userCache.getJiraUserNameAsync(restClient, identityKey, xcontextProvider.get().getUserReference());
         }
 
-        return null;
+        return CompletableFuture.completedFuture(null);
     }
 
-    private static String asJSON(Object object)
+    private static long toMillis(long nanos)
     {
-        ObjectMapper objectMapper = new ObjectMapper();
-        try {
-            return objectMapper.writeValueAsString(object);
-        } catch (JsonProcessingException e) {
-            throw new JiraIssueCreationException("Failed to serialize an object as JSON.", e);
-        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
-    private static JsonNode asTree(String json)
+    /**
+     * Identifies the Jira server and the Jira identity its requests are sent with, for caching what Jira returns.
+     * 
+     * @param instanceId the Jira server instance
+     * @param jiraServer the Jira server configuration
+     * @return the identity key
+     */
+    private String getIdentityKey(String instanceId, JIRAServer jiraServer)
     {
-        ObjectMapper objectMapper = new ObjectMapper();
-        try {
-            return objectMapper.readTree(json);
-        } catch (JsonProcessingException e) {
-            throw new JiraIssueCreationException("Failed to parse JSON.", e);
+        XWikiContext xcontext = xcontextProvider.get();
+        StringBuilder key = new StringBuilder(xcontext.getWikiId()).append(':').append(instanceId);
+
+        // All the XWiki users share the same Jira identity when using basic authentication or no authentication.
+        Optional<JIRAAuthenticator> authenticator = jiraServer.getJiraAuthenticator();
+        if (authenticator.isPresent() && !(authenticator.get() instanceof BasicAuthJIRAAuthenticator)) {
+            key.append(':').append(xcontext.getUserReference());
+            // A user that didn't authorize the access yet is sent anonymously: what Jira returns then must not be
+            // served anymore once the user authorized it.
+            if (!authenticator.get().isAuthenticatingRequest()) {
+                key.append(":anonymous");
+            }
         }
+
+        return key.toString();
     }
 
     private JiraIssueCreationRestClient getJiraIssueCreationRestClient(String instanceId)
     {
-        return new JiraIssueCreationRestClient(jiraConfiguration.getJIRAServers().get(instanceId));
+        JIRAServer jiraServer = jiraConfiguration.getJIRAServers().get(instanceId);
+        return new JiraIssueCreationRestClient(jiraServer, httpClientRegistry.getEndpoint(jiraServer), jsonMapper);
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Caches the issue creation metadata (createmeta) returned by Jira for a project and issue type, so that the issue
+ * creation doesn't download again the schema the creation form fetched a few seconds earlier.
+ * <p>
+ * The entries are kept for {@code jirapro.issuecreate.fieldsMetadataCache.ttl} seconds (configured in
+ * {@code xwiki.properties}).
+ *
+ * @version $Id$
+ */
+@Component(roles = JiraFieldsMetadataCache.class)
+@Singleton
+public class JiraFieldsMetadataCache implements Initializable, Disposable
+{
+    private static final String TTL_PROPERTY = "jirapro.issuecreate.fieldsMetadataCache.ttl";
+
+    private static final int DEFAULT_TTL = 300;
+
+    private static final String CACHE_ID = "jirapro.issuecreate.fieldsMetadata";
+
+    private static final int CACHE_SIZE = 1000;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<String> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration cacheConfiguration = new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE);
+        cacheConfiguration.getLRUEvictionConfiguration()
+            .setLifespan(configuration.getProperty(TTL_PROPERTY, DEFAULT_TTL));
+        try {
+            this.cache = cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the Jira fields metadata cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        cache.dispose();
+    }
+
+    /**
+     * Get the issue creation metadata of an issue type.
+     *
+     * @param restClient the REST client of the Jira server
+     * @param identityKey identifies the Jira server and the identity the requests are sent with
+     * @param project the project key
+     * @param issueType the issue type id
+     * @return The FieldsMetadata JSON returned by JIRA
+     */
+    public String getFieldsMetadata(JiraIssueCreationRestClient restClient, String identityKey, String project,
+        String issueType)
+    {
+        return JiraIssueCreationRestClient.await(getFieldsMetadataAsync(restClient, identityKey, project, issueType));
+    }
+
+    /**
+     * Asynchronous version of
+     * {@link #getFieldsMetadata(JiraIssueCreationRestClient, String, String, String)}.
+     *
+     * @param restClient the REST client of the Jira server
+     * @param identityKey identifies the Jira server and the identity the requests are sent with
+     * @param project the project key
+     * @param issueType the issue type id
+     * @return The FieldsMetadata JSON returned by JIRA
+     */
+    public CompletableFuture<String> getFieldsMetadataAsync(JiraIssueCreationRestClient restClient,
+        String identityKey, String project, String issueType)
+    {
+        String cacheKey = getCacheKey(identityKey, project, issueType);
+        String fieldsMetadata = cache.get(cacheKey);
+        if (fieldsMetadata != null) {
+            return CompletableFuture.completedFuture(fieldsMetadata);
+        }
+
+        return restClient.getFieldsMetadataAsync(project, issueType).thenApply(fetchedFieldsMetadata -> {
+            cache.set(cacheKey, fetchedFieldsMetadata);
+            return fetchedFieldsMetadata;
+        });
+    }
+
+    private static String getCacheKey(String identityKey, String project, String issueType)
+    {
+        return identityKey + '/' + project + '/' + issueType;
+    }
+}
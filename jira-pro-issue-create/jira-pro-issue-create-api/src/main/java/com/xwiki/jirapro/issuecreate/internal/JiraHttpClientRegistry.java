@@ -0,0 +1,210 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.contrib.jira.config.JIRAServer;
+
+/**
+ * Keeps one pooled HTTP client (and its asynchronous counterpart) per Jira server so that connections are reused
+ * across requests instead of paying a new TCP and TLS handshake for each call.
+ * <p>
+ * The registry is shared by all the wikis. The pool of a server that is not used anymore, e.g. because it was removed
+ * from the configuration of every wiki, is closed after a period of inactivity.
+ *
+ * @version $Id$
+ */
+@Component(roles = JiraHttpClientRegistry.class)
+@Singleton
+public class JiraHttpClientRegistry implements Initializable, Disposable
+{
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    private static final int MAX_CONNECTIONS_TOTAL = 50;
+
+    private static final int IO_THREAD_COUNT = 2;
+
+    /**
+     * The number of threads reading the asynchronous responses (JSON parsing, page merging) of all the servers.
+     */
+    private static final int RESPONSE_THREAD_COUNT = 4;
+
+    private static final Timeout CONNECT_TIMEOUT = Timeout.ofSeconds(10);
+
+    private static final Timeout SOCKET_TIMEOUT = Timeout.ofSeconds(30);
+
+    private static final Timeout CONNECTION_REQUEST_TIMEOUT = Timeout.ofSeconds(10);
+
+    private static final TimeValue KEEP_ALIVE = TimeValue.ofMinutes(1);
+
+    private static final TimeValue CONNECTION_TIME_TO_LIVE = TimeValue.ofMinutes(5);
+
+    private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(10);
+
+    private static final TimeValue MAX_IDLE_TIME = TimeValue.ofSeconds(30);
+
+    /**
+     * The number of minutes after which the pool of a server that was not used is closed.
+     */
+    private static final long MAX_ENDPOINT_IDLE_MINUTES = 30;
+
+    private final Map<String, JiraServerEndpoint> endpoints = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService evictionScheduler;
+
+    private ExecutorService responseExecutor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.evictionScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Jira issue creation connection pool eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evictionScheduler.scheduleWithFixedDelay(this::evictIdleEndpoints, MAX_ENDPOINT_IDLE_MINUTES,
+            MAX_ENDPOINT_IDLE_MINUTES, TimeUnit.MINUTES);
+        this.responseExecutor = Executors.newFixedThreadPool(RESPONSE_THREAD_COUNT, runnable -> {
+            Thread thread = new Thread(runnable, "Jira issue creation response processing");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get the endpoint of the given Jira server, creating its connection pool on first use.
+     *
+     * @param jiraServer the Jira server
+     * @return the endpoint holding the pooled HTTP client for the server
+     */
+    public JiraServerEndpoint getEndpoint(JIRAServer jiraServer)
+    {
+        // Marking the endpoint as used is atomic with its lookup, so that it can't be evicted in between.
+        return endpoints.compute(jiraServer.getURL(), (url, endpoint) -> {
+            JiraServerEndpoint usedEndpoint = endpoint != null ? endpoint
+                : new JiraServerEndpoint(url, this::createHttpClient, this::createAsyncClient, responseExecutor);
+            usedEndpoint.markUsed();
+            return usedEndpoint;
+        });
+    }
+
+    private void evictIdleEndpoints()
+    {
+        long maxIdleTime = TimeUnit.MINUTES.toMillis(MAX_ENDPOINT_IDLE_MINUTES);
+        List<JiraServerEndpoint> evictedEndpoints = new ArrayList<>();
+        for (String url : endpoints.keySet()) {
+            endpoints.computeIfPresent(url, (key, endpoint) -> {
+                if (endpoint.getIdleTime() < maxIdleTime) {
+                    return endpoint;
+                }
+                evictedEndpoints.add(endpoint);
+                return null;
+            });
+        }
+        evictedEndpoints.forEach(JiraServerEndpoint::close);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        evictionScheduler.shutdownNow();
+        endpoints.values().forEach(JiraServerEndpoint::close);
+        endpoints.clear();
+        responseExecutor.shutdownNow();
+    }
+
+    private CloseableHttpClient createHttpClient()
+    {
+        return HttpClients.custom()
+            .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                .setMaxConnTotal(MAX_CONNECTIONS_TOTAL)
+                .setDefaultConnectionConfig(createConnectionConfig())
+                .build())
+            .setDefaultRequestConfig(createRequestConfig())
+            .evictExpiredConnections()
+            .evictIdleConnections(MAX_IDLE_TIME)
+            .build();
+    }
+
+    private CloseableHttpAsyncClient createAsyncClient()
+    {
+        CloseableHttpAsyncClient asyncClient = HttpAsyncClients.custom()
+            .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                .setMaxConnTotal(MAX_CONNECTIONS_TOTAL)
+                .setDefaultConnectionConfig(createConnectionConfig())
+                .build())
+            .setIOReactorConfig(IOReactorConfig.custom()
+                .setIoThreadCount(IO_THREAD_COUNT)
+                .setSoTimeout(SOCKET_TIMEOUT)
+                .build())
+            .setDefaultRequestConfig(createRequestConfig())
+            .evictExpiredConnections()
+            .evictIdleConnections(MAX_IDLE_TIME)
+            .build();
+        asyncClient.start();
+        return asyncClient;
+    }
+
+    private static ConnectionConfig createConnectionConfig()
+    {
+        return ConnectionConfig.custom()
+            .setConnectTimeout(CONNECT_TIMEOUT)
+            .setSocketTimeout(SOCKET_TIMEOUT)
+            .setTimeToLive(CONNECTION_TIME_TO_LIVE)
+            .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+            .build();
+    }
+
+    private static RequestConfig createRequestConfig()
+    {
+        return RequestConfig.custom()
+            .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT)
+            .setConnectionKeepAlive(KEEP_ALIVE)
+            .build();
+    }
+}
@@ -20,34 +20,50 @@
 package com.xwiki.jirapro.issuecreate.internal;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 import org.apache.hc.client5.http.ContextBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHeaders;
 import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpStatus;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.xwiki.contrib.jira.config.JIRAServer;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * Rest Client for JIRA Issue creation.
+ * <p>
+ * Each call is available in a blocking flavor and in an asynchronous flavor returning a {@link CompletableFuture}. The
+ * asynchronous methods authenticate the request on the calling thread (authenticators usually depend on the current
+ * XWiki context) and then perform the round trip on the I/O threads of the server endpoint. The responses are read,
+ * and the returned futures completed, on the response executor of the endpoint so that parsing a large response
+ * doesn't hold an I/O thread.
+ * <p>
+ * All the calls go through the circuit breaker of the server endpoint, so calls to a server that is down or too busy
+ * fail right away with a {@link JiraIssueCreationException}.
  * 
  * @version $Id$
  */
@@ -56,41 +72,76 @@ public class JiraIssueCreationRestClient
 
     private static final String APPLICATION_JSON = "application/json";
 
-    private static final String CLIENT_CLOSE_FAILURE = "Failed to close client.";
-
     private static final String START_AT = "startAt";
 
-    private static final String MAX_RESULTS = "maxResults";
-
-    private static final String TOTAL = "total";
+    private static final String PERMISSION_PROBE_QUERY = "?maxResults=1";
 
     private static final String IS_LAST = "isLast";
 
     private static final String VALUES = "values";
 
+    private static final String CREATEMETA_PATH = "/rest/api/2/issue/createmeta/";
+
     private JIRAServer jiraServer;
 
+    private JiraServerEndpoint endpoint;
+
     private URI hostURI;
 
     private HttpHost target;
 
+    private JiraJSONMapper jsonMapper;
+
+    /**
+     * Authentication data captured on the calling thread so that it can be applied to requests sent from other threads.
+     */
+    private static final class RequestAuthentication
+    {
+        private final Header[] headers;
+
+        private final ContextBuilder contextBuilder;
+
+        RequestAuthentication(Header[] headers, ContextBuilder contextBuilder)
+        {
+            this.headers = headers;
+            this.contextBuilder = contextBuilder;
+        }
+
+        void apply(SimpleHttpRequest request)
+        {
+            for (Header header : headers) {
+                request.setHeader(header);
+            }
+        }
+
+        synchronized HttpClientContext createContext()
+        {
+            return contextBuilder.build();
+        }
+    }
+
     /**
      * Constructor.
      * 
-     * @param jiraServer
-     * @throws MalformedURLException
-     * @throws URISyntaxException
+     * @param jiraServer the Jira server to send the requests to
+     * @param endpoint the long-lived connection state of the Jira server
+     * @param jsonMapper the shared JSON mapper
      */
-    public JiraIssueCreationRestClient(JIRAServer jiraServer)
+    public JiraIssueCreationRestClient(JIRAServer jiraServer, JiraServerEndpoint endpoint, JiraJSONMapper jsonMapper)
     {
         this.jiraServer = jiraServer;
+        this.endpoint = endpoint;
+        this.hostURI = endpoint.getHostURI();
+        this.target = endpoint.getTarget();
+        this.jsonMapper = jsonMapper;
+    }
 
-        try {
-            this.hostURI = new URI(jiraServer.getURL());
-        } catch (URISyntaxException e) {
-            throw new JiraIssueCreationException("Could not parse the Jira Server URL.", e);
-        }
-        target = new HttpHost(hostURI.getScheme(), hostURI.getHost(), hostURI.getPort());
+    /**
+     * @return the Jira server the requests are sent to
+     */
+    public JIRAServer getJiraServer()
+    {
+        return jiraServer;
     }
 
     /**
@@ -106,28 +157,26 @@ public class JiraIssueCreationRestClient
     }
 
     /**
-     * Get the HTTP Client for the JIRA Server with the correct auth setup.
+     * Run the authenticator of the Jira server against a probe request and capture what it produced.
      * 
-     * @return the HTTP Client
-     * @throws MalformedURLException
+     * @return the captured authentication
      */
-    private CloseableHttpClient getHttpClient()
+    private RequestAuthentication authenticate()
     {
-        return HttpClients.createDefault();
+        HttpGet probe = new HttpGet(hostURI);
+        ContextBuilder builder = ContextBuilder.create();
+        jiraServer.getJiraAuthenticator().ifPresent(a -> a.authenticateInHttpClient(builder, probe, target));
+        return new RequestAuthentication(probe.getHeaders(), builder);
     }
 
     /**
      * Get all projects.
      * 
      * @return The projects JSON returned by JIRA
-     * @throws IOException
-     * @throws URISyntaxException
      */
     public String getProjects()
     {
-        URI projectURI;
-        projectURI = hostURI.resolve("/rest/api/2/project");
-        return get(projectURI);
+        return get(getProjectsURI());
     }
 
     /**
@@ -135,14 +184,10 @@ public class JiraIssueCreationRestClient
      * 
      * @param project The project from which issue types should be retrieved
      * @return The issue types JSON returned by JIRA
-     * @throws IOException
-     * @throws URISyntaxException
      */
     public String getIssueTypes(String project)
     {
-        URI issueTypesURI;
-        issueTypesURI = hostURI.resolve("/rest/api/2/issue/createmeta/" + urlEncode(project) + "/issuetypes");
-        return paginatedGet(issueTypesURI);
+        return paginatedGet(getIssueTypesURI(project));
     }
 
     /**
@@ -154,11 +199,7 @@ public class JiraIssueCreationRestClient
      */
     public String getFieldsMetadata(String project, String issueType)
     {
-        URI fieldsMetadataURI;
-        fieldsMetadataURI = hostURI
-            .resolve("/rest/api/2/issue/createmeta/" + urlEncode(project) + "/issuetypes/" + urlEncode(issueType));
-
-        return paginatedGet(fieldsMetadataURI);
+        return paginatedGet(getFieldsMetadataURI(project, issueType));
     }
 
     /**
@@ -170,11 +211,7 @@ public class JiraIssueCreationRestClient
      */
     public String getAssignableUsers(String project, String text)
     {
-        URI assignableUsersURI;
-        assignableUsersURI = hostURI.resolve(
-            "/rest/api/2/user/assignable/search?project=" + urlEncode(project) + "&username=" + urlEncode(text));
-
-        return get(assignableUsersURI);
+        return get(getAssignableUsersURI(project, text));
     }
 
     /**
@@ -185,10 +222,7 @@ public class JiraIssueCreationRestClient
      */
     public String getUsers(String text)
     {
-        URI usersURI;
-        usersURI = hostURI.resolve("/rest/api/2/user/search?username=" + urlEncode(text));
-
-        return get(usersURI);
+        return get(getUsersURI(text));
     }
 
     /**
@@ -199,10 +233,7 @@ public class JiraIssueCreationRestClient
      */
     public String getUser(String text)
     {
-        URI userURI;
-        userURI = hostURI.resolve("/rest/api/2/user?username=" + urlEncode(text));
-
-        return get(userURI);
+        return get(getUserURI(text));
     }
 
     /**
@@ -213,10 +244,139 @@ public class JiraIssueCreationRestClient
      */
     public String postIssue(String inputData)
     {
-        URI createIssueURI;
-        createIssueURI = hostURI.resolve("/rest/api/2/issue");
+        return post(getCreateIssueURI(), new StringEntity(inputData));
+    }
+
+    /**
+     * Post issue.
+     * 
+     * @param issueEntity the issue data, written directly to the request
+     * @return the isse creation JSON returned by JIRA
+     */
+    public String postIssue(HttpEntity issueEntity)
+    {
+        return post(getCreateIssueURI(), issueEntity);
+    }
+
+    /**
+     * Check if issues can be created in the given projects. This is the case when the issue types of the project can be
+     * listed for creation. The projects are checked concurrently, requesting a single issue type for each.
+     * 
+     * @param projects the keys of the projects to check
+     * @return the create permission of each project, projects that could not be checked (e.g. because of a network
+     *     failure, a missing authentication or a server error) are missing
+     */
+    public Map<String, Boolean> canCreateIssues(Collection<String> projects)
+    {
+        RequestAuthentication authentication = authenticate();
+        Map<String, CompletableFuture<Boolean>> checks = new LinkedHashMap<>();
+        for (String project : projects) {
+            URI probeURI = URI.create(getIssueTypesURI(project) + PERMISSION_PROBE_QUERY);
+            checks.put(project,
+                probePermissionAsync(probeURI, authentication).exceptionally(e -> null));
+        }
+
+        Map<String, Boolean> permissions = new LinkedHashMap<>();
+        checks.forEach((project, check) -> {
+            Boolean permission = check.join();
+            if (permission != null) {
+                permissions.put(project, permission);
+            }
+        });
+        return permissions;
+    }
+
+    /**
+     * Asynchronous version of {@link #getProjects()}.
+     * 
+     * @return The projects JSON returned by JIRA
+     */
+    public CompletableFuture<String> getProjectsAsync()
+    {
+        return getAsync(getProjectsURI(), authenticate());
+    }
+
+    /**
+     * Asynchronous version of {@link #getIssueTypes(String)}.
+     * 
+     * @param project The project from which issue types should be retrieved
+     * @return The issue types JSON returned by JIRA
+     */
+    public CompletableFuture<String> getIssueTypesAsync(String project)
+    {
+        return paginatedGetAsync(getIssueTypesURI(project));
+    }
+
+    /**
+     * Asynchronous version of {@link #getFieldsMetadata(String, String)}.
+     * 
+     * @param project
+     * @param issueType
+     * @return The FieldsMetadata JSON returned by JIRA
+     */
+    public CompletableFuture<String> getFieldsMetadataAsync(String project, String issueType)
+    {
+        return paginatedGetAsync(getFieldsMetadataURI(project, issueType));
+    }
+
+    /**
+     * Asynchronous version of {@link #getAssignableUsers(String, String)}.
+     * 
+     * @param project
+     * @param text The search query
+     * @return The assignable users JSON returned by JRIA
+     */
+    public CompletableFuture<String> getAssignableUsersAsync(String project, String text)
+    {
+        return getAsync(getAssignableUsersURI(project, text), authenticate());
+    }
 
-        return post(createIssueURI, inputData);
+    /**
+     * Asynchronous version of {@link #getUsers(String)}.
+     * 
+     * @param text The search query
+     * @return The assignable users JSON returned by JRIA
+     */
+    public CompletableFuture<String> getUsersAsync(String text)
+    {
+        return getAsync(getUsersURI(text), authenticate());
+    }
+
+    /**
+     * Asynchronous version of {@link #getUser(String)}. Unlike the blocking flavor, the call fails when Jira doesn't
+     * answer with the user, so that an error response is not mistaken for a missing user.
+     * 
+     * @param text The search query
+     * @return The user JSON returned by JIRA, or {@code null} if the user doesn't exist
+     */
+    public CompletableFuture<String> getUserAsync(String text)
+    {
+        RequestAuthentication authentication = authenticate();
+        SimpleHttpRequest request = SimpleRequestBuilder.get(getUserURI(text)).build();
+        authentication.apply(request);
+        request.setHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
+        return execute(request, authentication, "Failed to perform a GET Request.", response -> {
+            int code = response.getCode();
+            if (code == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            }
+            if (code < HttpStatus.SC_SUCCESS || code >= HttpStatus.SC_REDIRECTION) {
+                throw new JiraIssueCreationException(
+                    String.format("Failed to get the Jira user, the server answered with status [%s].", code));
+            }
+            return getBodyText(response);
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #postIssue(String)}.
+     * 
+     * @param inputData
+     * @return the isse creation JSON returned by JIRA
+     */
+    public CompletableFuture<String> postIssueAsync(String inputData)
+    {
+        return postAsync(getCreateIssueURI(), inputData, authenticate());
     }
 
     /**
@@ -227,34 +387,89 @@ public class JiraIssueCreationRestClient
      */
     public String paginatedGet(URI uri)
     {
-        int total = 0;
-        boolean isLast = false;
+        return await(paginatedGetAsync(uri));
+    }
 
-        List<JsonNode> entries = new ArrayList<>();
+    /**
+     * Asynchronous version of {@link #paginatedGet(URI)}.
+     * <p>
+     * The pages are fetched concurrently and streamed in order into the merged response, see
+     * {@link JiraPaginatedResponseMerger}. The merged response itself is built as a whole, and copied once more when
+     * turned into the returned string.
+     * 
+     * @param uri the URI to GET without pagination parameters
+     * @return the concatenated received arrays.
+     */
+    public CompletableFuture<String> paginatedGetAsync(URI uri)
+    {
+        RequestAuthentication authentication = authenticate();
+        return new JiraPaginatedResponseMerger(jsonMapper.getFactory(),
+            start -> getPageAsync(formatPaginationParameters(start, uri), authentication)).mergeAsync();
+    }
 
-        while (!isLast) {
-            URI paginationURI = formatPaginationParameters(entries.size(), uri);
-            String rawResponse = get(paginationURI);
-            JsonNode response = asTree(rawResponse);
-            if (response.has(TOTAL)) {
-                total = response.get(TOTAL).asInt();
-            }
-            if (response.has(IS_LAST)) {
-                isLast = response.get(IS_LAST).asBoolean();
-            } else {
-                throw new JiraIssueCreationException("Expected a paginated response.");
+    /**
+     * @return true if the resource can be listed, false if Jira denied access to it, {@code null} if the answer doesn't
+     *     tell anything about the permissions of the identity
+     */
+    private CompletableFuture<Boolean> probePermissionAsync(URI uri, RequestAuthentication authentication)
+    {
+        SimpleHttpRequest request = SimpleRequestBuilder.get(uri).build();
+        authentication.apply(request);
+        request.setHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
+        return execute(request, authentication, "Failed to perform a GET Request.", response -> {
+            int code = response.getCode();
+            if (code == HttpStatus.SC_FORBIDDEN || code == HttpStatus.SC_NOT_FOUND) {
+                return false;
             }
+            byte[] body = response.getBodyBytes();
+            return code == HttpStatus.SC_OK && body != null && isPage(body) ? Boolean.TRUE : null;
+        });
+    }
 
-            if (response.has(VALUES)) {
-                response.get(VALUES).forEach(entry -> {
-                    entries.add(entry);
-                });
-            } else {
-                throw new JiraIssueCreationException("Expected a paginated response.");
-            }
+    private boolean isPage(byte[] rawResponse)
+    {
+        try {
+            JsonNode response = jsonMapper.getReader().readTree(rawResponse);
+            return response != null && response.has(IS_LAST) && response.has(VALUES);
+        } catch (IOException e) {
+            return false;
         }
+    }
+
+    private URI getProjectsURI()
+    {
+        return hostURI.resolve("/rest/api/2/project");
+    }
+
+    private URI getIssueTypesURI(String project)
+    {
+        return hostURI.resolve(CREATEMETA_PATH + urlEncode(project) + "/issuetypes");
+    }
+
+    private URI getFieldsMetadataURI(String project, String issueType)
+    {
+        return hostURI.resolve(CREATEMETA_PATH + urlEncode(project) + "/issuetypes/" + urlEncode(issueType));
+    }
 
-        return asJSON(Map.of(START_AT, 0, MAX_RESULTS, entries.size(), TOTAL, total, IS_LAST, isLast, VALUES, entries));
+    private URI getAssignableUsersURI(String project, String text)
+    {
+        return hostURI.resolve(
+            "/rest/api/2/user/assignable/search?project=" + urlEncode(project) + "&username=" + urlEncode(text));
+    }
+
+    private URI getUsersURI(String text)
+    {
+        return hostURI.resolve("/rest/api/2/user/search?username=" + urlEncode(text));
+    }
+
+    private URI getUserURI(String text)
+    {
+        return hostURI.resolve("/rest/api/2/user?username=" + urlEncode(text));
+    }
+
+    private URI getCreateIssueURI()
+    {
+        return hostURI.resolve("/rest/api/2/issue");
     }
 
     private static URI formatPaginationParameters(int start, URI baseURI)
@@ -278,88 +493,202 @@ public class JiraIssueCreationRestClient
      */
     private String get(URI uri)
     {
-        CloseableHttpClient client = getHttpClient();
-
-        try {
-            HttpGet httpget = new HttpGet(uri);
-            httpget.setHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
-            try {
-                return client.execute(target, httpget, getLocalContext(httpget), response -> {
-                    return EntityUtils.toString(response.getEntity());
-                }).toString();
-            } catch (IOException e) {
-                throw new JiraIssueCreationException("Failed to perform a GET Request.", e);
-            }
-        } finally {
-            try {
-                client.close();
-            } catch (IOException e) {
-                throw new JiraIssueCreationException(CLIENT_CLOSE_FAILURE, e);
-            }
-        }
+        HttpGet httpget = new HttpGet(uri);
+        httpget.setHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
+        return execute(httpget, "Failed to perform a GET Request.");
     }
 
     /**
      * Performs a POST request with proper Auth to a Jira instance.
      * 
      * @param uri
-     * @param data
+     * @param entity
      * @return the response
      */
-    private String post(URI uri, String data)
+    private String post(URI uri, HttpEntity entity)
     {
-        CloseableHttpClient client = getHttpClient();
+        HttpPost httppost = new HttpPost(uri);
+        httppost.setEntity(entity);
+        httppost.setHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
+        httppost.setHeader(HttpHeaders.ACCEPT, APPLICATION_JSON);
+        return execute(httppost, "Failed to perform a POST Request.");
+    }
 
+    private String execute(HttpUriRequestBase request, String failureMessage)
+    {
+        // Authenticate first, so that the time spent getting a token doesn't count as Jira latency.
+        HttpClientContext localContext = getLocalContext(request);
+        JiraServerCircuitBreaker circuitBreaker = endpoint.getCircuitBreaker();
+        JiraServerCircuitBreaker.Permit permit = circuitBreaker.acquire();
+        Map.Entry<Integer, String> response;
         try {
-            HttpPost httppost = new HttpPost(uri);
-            httppost.setEntity(new StringEntity(data));
-            httppost.setHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
-            httppost.setHeader(HttpHeaders.ACCEPT, APPLICATION_JSON);
-            try {
-                return client.execute(target, httppost, getLocalContext(httppost), response -> {
-                    return EntityUtils.toString(response.getEntity());
-                }).toString();
-            } catch (IOException e) {
-                throw new JiraIssueCreationException("Failed to perform a POST Request.", e);
-            }
-        } finally {
-            try {
-                client.close();
-            } catch (IOException e) {
-                throw new JiraIssueCreationException(CLIENT_CLOSE_FAILURE, e);
-            }
+            response = endpoint.getHttpClient().execute(target, request, localContext,
+                r -> Map.entry(r.getCode(), EntityUtils.toString(r.getEntity())));
+        } catch (IllegalStateException e) {
+            // The connection pool was closed, e.g. because the wiki is shutting down: Jira was not reached.
+            circuitBreaker.cancel(permit);
+            throw new JiraIssueCreationException(failureMessage, e);
+        } catch (IOException | RuntimeException e) {
+            circuitBreaker.release(permit, true);
+            throw new JiraIssueCreationException(failureMessage, e);
         }
+        circuitBreaker.release(permit, isServerError(response.getKey()));
+        return response.getValue();
     }
 
     /**
-     * URL Encode the given string.
+     * Performs an asynchronous GET request with an already captured Auth to a Jira instance.
      * 
-     * @param input
-     * @return the URL encoded string
+     * @param uri
+     * @param authentication
+     * @return the response
      */
-    private static String urlEncode(String input)
+    private CompletableFuture<String> getAsync(URI uri, RequestAuthentication authentication)
     {
-        return URLEncoder.encode(input, StandardCharsets.UTF_8);
+        SimpleHttpRequest request = SimpleRequestBuilder.get(uri).build();
+        authentication.apply(request);
+        request.setHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
+        return execute(request, authentication, "Failed to perform a GET Request.",
+            JiraIssueCreationRestClient::getBodyText);
+    }
+
+    /**
+     * Performs an asynchronous GET request for a page of a paginated resource, keeping the raw response bytes.
+     * 
+     * @param uri
+     * @param authentication
+     * @return the raw response
+     */
+    private CompletableFuture<byte[]> getPageAsync(URI uri, RequestAuthentication authentication)
+    {
+        SimpleHttpRequest request = SimpleRequestBuilder.get(uri).build();
+        authentication.apply(request);
+        request.setHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
+        return execute(request, authentication, "Failed to perform a GET Request.", response -> {
+            byte[] body = response.getBodyBytes();
+            return body != null ? body : new byte[0];
+        });
+    }
+
+    /**
+     * Performs an asynchronous POST request with an already captured Auth to a Jira instance.
+     * 
+     * @param uri
+     * @param data
+     * @param authentication
+     * @return the response
+     */
+    private CompletableFuture<String> postAsync(URI uri, String data, RequestAuthentication authentication)
+    {
+        SimpleHttpRequest request = SimpleRequestBuilder.post(uri).setBody(data, ContentType.APPLICATION_JSON).build();
+        authentication.apply(request);
+        request.setHeader(HttpHeaders.ACCEPT, APPLICATION_JSON);
+        return execute(request, authentication, "Failed to perform a POST Request.",
+            JiraIssueCreationRestClient::getBodyText);
     }
 
-    private static String asJSON(Object object)
+    private <T> CompletableFuture<T> execute(SimpleHttpRequest request, RequestAuthentication authentication,
+        String failureMessage, Function<SimpleHttpResponse, T> bodyReader)
     {
-        ObjectMapper objectMapper = new ObjectMapper();
+        JiraServerCircuitBreaker circuitBreaker = endpoint.getCircuitBreaker();
+        JiraServerCircuitBreaker.Permit permit;
         try {
-            return objectMapper.writeValueAsString(object);
-        } catch (JsonProcessingException e) {
-            throw new JiraIssueCreationException("Failed to serialize an object as JSON.", e);
+            permit = circuitBreaker.acquire();
+        } catch (JiraIssueCreationException e) {
+            return CompletableFuture.failedFuture(e);
         }
+
+        CompletableFuture<SimpleHttpResponse> result = new CompletableFuture<>();
+        try {
+            endpoint.getAsyncClient().execute(request, authentication.createContext(),
+                new FutureCallback<SimpleHttpResponse>()
+                {
+                    @Override
+                    public void completed(SimpleHttpResponse response)
+                    {
+                        circuitBreaker.release(permit, isServerError(response.getCode()));
+                        result.complete(response);
+                    }
+
+                    @Override
+                    public void failed(Exception e)
+                    {
+                        circuitBreaker.release(permit, true);
+                        result.completeExceptionally(new JiraIssueCreationException(failureMessage, e));
+                    }
+
+                    @Override
+                    public void cancelled()
+                    {
+                        circuitBreaker.cancel(permit);
+                        result.completeExceptionally(new JiraIssueCreationException(failureMessage));
+                    }
+                });
+        } catch (RuntimeException e) {
+            // The request was not submitted, e.g. because the endpoint was closed.
+            circuitBreaker.cancel(permit);
+            result.completeExceptionally(new JiraIssueCreationException(failureMessage, e));
+        }
+        return result.thenApplyAsync(response -> readBody(response, bodyReader, failureMessage),
+            endpoint.getResponseExecutor());
     }
 
-    private static JsonNode asTree(String json)
+    private static <T> T readBody(SimpleHttpResponse response, Function<SimpleHttpResponse, T> bodyReader,
+        String failureMessage)
     {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
-            return objectMapper.readTree(json);
-        } catch (JsonProcessingException e) {
-            throw new JiraIssueCreationException("Failed to parse JSON.", e);
+            return bodyReader.apply(response);
+        } catch (JiraIssueCreationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new JiraIssueCreationException(failureMessage, e);
         }
     }
 
+    private static boolean isServerError(int statusCode)
+    {
+        return statusCode >= HttpStatus.SC_SERVER_ERROR;
+    }
+
+    private static String getBodyText(SimpleHttpResponse response)
+    {
+        byte[] body = response.getBodyBytes();
+        if (body == null) {
+            return "";
+        }
+        ContentType contentType = response.getContentType();
+        Charset charset = contentType != null ? contentType.getCharset() : null;
+        return new String(body, charset != null ? charset : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Wait for an asynchronous call, unwrapping the failure cause.
+     * 
+     * @param future the asynchronous call
+     * @param <T> the type of the call result
+     * @return the call result
+     */
+    static <T> T await(CompletableFuture<T> future)
+    {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof JiraIssueCreationException) {
+                throw (JiraIssueCreationException) e.getCause();
+            }
+            throw new JiraIssueCreationException("Jira request failed.", e.getCause());
+        }
+    }
+
+    /**
+     * URL Encode the given string.
+     * 
+     * @param input
+     * @return the URL encoded string
+     */
+    private static String urlEncode(String input)
+    {
+        return URLEncoder.encode(input, StandardCharsets.UTF_8);
+    }
+
 }
@@ -0,0 +1,327 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * The issue data sent by the issue creation form. The data is only scanned with a streaming parser to validate it and
+ * extract the project and issue type; it is copied to the request sent to Jira without being turned into a tree or
+ * into intermediate strings.
+ *
+ * @version $Id$
+ */
+public final class JiraIssueInput
+{
+    private static final String FIELDS = "fields";
+
+    private static final String ISSUE_TYPE = "issuetype";
+
+    private static final String PROJECT = "project";
+
+    private static final String REPORTER = "reporter";
+
+    private static final String ID = "id";
+
+    private static final String KEY = "key";
+
+    private static final String NAME = "name";
+
+    private static final String INVALID_INPUT = "Invalid Input Data.";
+
+    private static final String ISSUE_TOO_LARGE = "The issue data exceeds the maximum size of [%d] bytes.";
+
+    private final byte[] content;
+
+    private final JsonFactory jsonFactory;
+
+    private boolean hasFields;
+
+    private boolean hasIssueType;
+
+    private boolean hasProject;
+
+    private boolean hasReporter;
+
+    private String issueType;
+
+    private String project;
+
+    /**
+     * The issue data, copied to the Jira request with the reporter field added to the issue fields.
+     */
+    private final class IssueEntity extends AbstractHttpEntity
+    {
+        private final String reporter;
+
+        IssueEntity(String reporter)
+        {
+            super(ContentType.APPLICATION_JSON, null, true);
+            this.reporter = reporter;
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException
+        {
+            try (JsonParser parser = jsonFactory.createParser(content);
+                JsonGenerator generator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8))
+            {
+                // The HTTP client takes care of closing the request output stream.
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+                // The content was validated so we know it's an object.
+                parser.nextToken();
+                generator.writeStartObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.currentName();
+                    generator.writeFieldName(fieldName);
+                    if (parser.nextToken() == JsonToken.START_OBJECT && FIELDS.equals(fieldName)) {
+                        copyFields(parser, generator);
+                    } else {
+                        generator.copyCurrentStructure(parser);
+                    }
+                }
+                generator.writeEndObject();
+            }
+        }
+
+        private void copyFields(JsonParser parser, JsonGenerator generator) throws IOException
+        {
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                generator.copyCurrentStructure(parser);
+            }
+            if (reporter != null) {
+                generator.writeObjectFieldStart(REPORTER);
+                generator.writeStringField(NAME, reporter);
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length);
+            writeTo(outputStream);
+            return new ByteArrayInputStream(outputStream.toByteArray());
+        }
+
+        @Override
+        public long getContentLength()
+        {
+            return -1;
+        }
+
+        @Override
+        public boolean isRepeatable()
+        {
+            return true;
+        }
+
+        @Override
+        public boolean isStreaming()
+        {
+            return false;
+        }
+
+        @Override
+        public void close()
+        {
+            // Nothing to release.
+        }
+    }
+
+    private JiraIssueInput(byte[] content, JsonFactory jsonFactory)
+    {
+        this.content = content;
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Read the issue data, up to the given maximum size.
+     *
+     * @param inputStream the stream to read the issue data from
+     * @param declaredLength the length announced by the sender, {@code -1} if unknown
+     * @param maxSize the maximum number of bytes of the issue data
+     * @return the issue data
+     * @throws IOException if the issue data can't be read
+     */
+    public static byte[] read(InputStream inputStream, long declaredLength, int maxSize) throws IOException
+    {
+        if (declaredLength > maxSize) {
+            throw new JiraIssueCreationException(String.format(ISSUE_TOO_LARGE, maxSize));
+        }
+
+        byte[] content = inputStream.readNBytes(maxSize + 1);
+        if (content.length > maxSize) {
+            throw new JiraIssueCreationException(String.format(ISSUE_TOO_LARGE, maxSize));
+        }
+
+        return content;
+    }
+
+    /**
+     * Scan and validate the issue data.
+     *
+     * @param content the issue data, as sent by the issue creation form
+     * @param jsonFactory the factory used to create the streaming parsers and generators
+     * @return the validated issue data
+     */
+    public static JiraIssueInput parse(byte[] content, JsonFactory jsonFactory)
+    {
+        JiraIssueInput input = new JiraIssueInput(content, jsonFactory);
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            input.scan(parser);
+        } catch (IOException e) {
+            throw new JiraIssueCreationException("Failed to parse JSON.", e);
+        }
+        input.validate();
+        return input;
+    }
+
+    private void scan(JsonParser parser) throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JiraIssueCreationException(INVALID_INPUT);
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && FIELDS.equals(fieldName)) {
+                hasFields = true;
+                scanFields(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void scanFields(JsonParser parser) throws IOException
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            if (ISSUE_TYPE.equals(fieldName)) {
+                hasIssueType = true;
+                issueType = readTextProperty(parser, ID);
+            } else if (PROJECT.equals(fieldName)) {
+                hasProject = true;
+                project = readTextProperty(parser, KEY);
+            } else {
+                if (REPORTER.equals(fieldName)) {
+                    hasReporter = true;
+                }
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Read a text property of the object the parser is positioned on.
+     *
+     * @return the property value, or {@code null} if the current value is not an object or if the property is missing
+     *     or not a text
+     */
+    private static String readTextProperty(JsonParser parser, String propertyName) throws IOException
+    {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+            if (propertyName.equals(fieldName)) {
+                value = valueToken == JsonToken.VALUE_STRING ? parser.getText() : null;
+            }
+            parser.skipChildren();
+        }
+        return value;
+    }
+
+    private void validate()
+    {
+        if (!hasFields) {
+            throw new JiraIssueCreationException(INVALID_INPUT);
+        }
+
+        if (!hasIssueType) {
+            throw new JiraIssueCreationException("Missing issuetype field.");
+        }
+
+        if (!hasProject) {
+            throw new JiraIssueCreationException("Missing project field.");
+        }
+
+        if (hasReporter) {
+            throw new JiraIssueCreationException("Unexpected reporter field.");
+        }
+
+        if (issueType == null) {
+            throw new JiraIssueCreationException("Invalid issueType field.");
+        }
+
+        if (project == null) {
+            throw new JiraIssueCreationException("Invalid project field.");
+        }
+    }
+
+    /**
+     * @return the key of the project to create the issue in
+     */
+    public String getProject()
+    {
+        return project;
+    }
+
+    /**
+     * @return the id of the type of the issue to create
+     */
+    public String getIssueType()
+    {
+        return issueType;
+    }
+
+    /**
+     * Create the entity to send to Jira.
+     *
+     * @param reporter the reporter user name to add to the issue fields, or {@code null} to leave it out
+     * @return the issue entity
+     */
+    public HttpEntity toEntity(String reporter)
+    {
+        return new IssueEntity(reporter);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.io.IOException;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Shared JSON handling for the Jira issue creation. The underlying {@link ObjectMapper} is configured once and its
+ * readers and writers are thread-safe, so their serializer and deserializer caches are reused across requests.
+ *
+ * @version $Id$
+ */
+@Component(roles = JiraJSONMapper.class)
+@Singleton
+public class JiraJSONMapper
+{
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ObjectReader reader = objectMapper.reader();
+
+    private final ObjectWriter writer = objectMapper.writer();
+
+    /**
+     * Serialize the given object as JSON.
+     *
+     * @param object the object to serialize
+     * @return the JSON
+     */
+    public String asJSON(Object object)
+    {
+        try {
+            return writer.writeValueAsString(object);
+        } catch (IOException e) {
+            throw new JiraIssueCreationException("Failed to serialize an object as JSON.", e);
+        }
+    }
+
+    /**
+     * Parse the given JSON.
+     *
+     * @param json the JSON to parse
+     * @return the parsed tree
+     */
+    public JsonNode asTree(String json)
+    {
+        try {
+            return reader.readTree(json);
+        } catch (IOException e) {
+            throw new JiraIssueCreationException("Failed to parse JSON.", e);
+        }
+    }
+
+    /**
+     * @return the factory to use for streaming parsers and generators
+     */
+    public JsonFactory getFactory()
+    {
+        return objectMapper.getFactory();
+    }
+
+    /**
+     * @return the shared reader
+     */
+    public ObjectReader getReader()
+    {
+        return reader;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+/**
+ * Fetches the pages of a paginated Jira resource and merges them, in order, with a {@link JiraPaginatedResponseWriter}.
+ * <p>
+ * The first page is fetched alone to learn the page size and the total number of entries, then the remaining pages
+ * are fetched concurrently (with a bounded number of requests in flight) and streamed in order into the merged
+ * response, so that only a few raw pages wait in memory at any time. When the entries change while the pages are
+ * being fetched, the pages following the last merged entry are fetched one after the other until the last one.
+ *
+ * @version $Id$
+ */
+public class JiraPaginatedResponseMerger
+{
+    private static final int MAX_PARALLEL_PAGES = 4;
+
+    private final JsonFactory jsonFactory;
+
+    private final IntFunction<CompletableFuture<byte[]>> pageSource;
+
+    /**
+     * Constructor.
+     *
+     * @param jsonFactory the factory used to parse the pages and write the merged response
+     * @param pageSource fetches the raw page starting at the given entry index
+     */
+    public JiraPaginatedResponseMerger(JsonFactory jsonFactory, IntFunction<CompletableFuture<byte[]>> pageSource)
+    {
+        this.jsonFactory = jsonFactory;
+        this.pageSource = pageSource;
+    }
+
+    /**
+     * @return the merged JSON, once all the pages are fetched
+     */
+    public CompletableFuture<String> mergeAsync()
+    {
+        JiraPaginatedResponseWriter writer = new JiraPaginatedResponseWriter(jsonFactory);
+
+        return pageSource.apply(0).thenCompose(firstPage -> {
+            writer.append(firstPage);
+            int pageSize = writer.getCount();
+            if (writer.isLast()) {
+                return CompletableFuture.completedFuture(writer);
+            } else if (!writer.hasTotal() || pageSize == 0) {
+                // We can't compute the remaining pages, walk them one after the other.
+                return appendPagesAsync(writer);
+            }
+
+            return appendRemainingPagesAsync(writer, pageSize).thenCompose(merged -> {
+                if (merged.isLast()) {
+                    return CompletableFuture.completedFuture(merged);
+                }
+                // Entries were added while we were fetching, get the extra pages.
+                return appendPagesAsync(merged);
+            });
+        }).thenApply(JiraPaginatedResponseWriter::finish);
+    }
+
+    /**
+     * Fetch the pages following the first one concurrently, knowing the page size and the total number of entries,
+     * and append them in order.
+     * <p>
+     * A page is only requested once the page {@value #MAX_PARALLEL_PAGES} positions before it has been merged, which
+     * bounds both the requests in flight and the pages waiting to be merged.
+     * 
+     * @return the writer, once all the pages are appended
+     */
+    private CompletableFuture<JiraPaginatedResponseWriter> appendRemainingPagesAsync(JiraPaginatedResponseWriter writer,
+        int pageSize)
+    {
+        int pageCount = Math.max(1, (writer.getTotal() - 1) / pageSize);
+        List<CompletableFuture<JiraPaginatedResponseWriter>> merged = new ArrayList<>(pageCount);
+
+        CompletableFuture<JiraPaginatedResponseWriter> start = CompletableFuture.completedFuture(writer);
+        CompletableFuture<JiraPaginatedResponseWriter> previous = start;
+        for (int index = 0; index < pageCount; index++) {
+            int pageStart = (index + 1) * pageSize;
+            CompletableFuture<?> slot = index < MAX_PARALLEL_PAGES ? start : merged.get(index - MAX_PARALLEL_PAGES);
+            CompletableFuture<byte[]> page = slot.thenCompose(ready -> pageSource.apply(pageStart));
+            previous = previous.thenCombine(page, (mergedWriter, rawPage) -> {
+                mergedWriter.append(rawPage);
+                return mergedWriter;
+            });
+            merged.add(previous);
+        }
+
+        return previous;
+    }
+
+    /**
+     * Get the pages starting at the current number of entries, until the last one.
+     * 
+     * @return the writer, once all the pages are appended
+     */
+    private CompletableFuture<JiraPaginatedResponseWriter> appendPagesAsync(JiraPaginatedResponseWriter writer)
+    {
+        return pageSource.apply(writer.getCount()).thenCompose(rawPage -> {
+            writer.append(rawPage);
+            if (writer.isLast()) {
+                return CompletableFuture.completedFuture(writer);
+            }
+            return appendPagesAsync(writer);
+        });
+    }
+}
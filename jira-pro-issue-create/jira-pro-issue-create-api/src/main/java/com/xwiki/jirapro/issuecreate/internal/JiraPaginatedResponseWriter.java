@@ -0,0 +1,180 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Merges the pages of a paginated Jira response into a single JSON object, copying the entries of each page straight
+ * to the output with the Jackson streaming API instead of building a tree of the whole result.
+ * <p>
+ * Pages must be appended in order and one at a time. The merged document has the same shape as a single Jira page
+ * holding all the entries.
+ * <p>
+ * The merged document is accumulated in memory and copied into a string by {@link #finish()}, so the peak memory use
+ * is about two copies of the merged result, on top of the page being appended.
+ *
+ * @version $Id$
+ */
+public class JiraPaginatedResponseWriter
+{
+    private static final String START_AT = "startAt";
+
+    private static final String MAX_RESULTS = "maxResults";
+
+    private static final String TOTAL = "total";
+
+    private static final String IS_LAST = "isLast";
+
+    private static final String VALUES = "values";
+
+    private static final String INVALID_PAGE = "Expected a paginated response.";
+
+    private final JsonFactory jsonFactory;
+
+    private final StringWriter output = new StringWriter();
+
+    private final JsonGenerator generator;
+
+    private int count;
+
+    private int total;
+
+    private boolean hasTotal;
+
+    private boolean isLast;
+
+    /**
+     * Constructor.
+     *
+     * @param jsonFactory the factory used to create the streaming parsers and generator
+     */
+    public JiraPaginatedResponseWriter(JsonFactory jsonFactory)
+    {
+        this.jsonFactory = jsonFactory;
+        try {
+            this.generator = jsonFactory.createGenerator(output);
+            generator.writeStartObject();
+            generator.writeArrayFieldStart(VALUES);
+        } catch (IOException e) {
+            throw new JiraIssueCreationException("Failed to start the paginated response.", e);
+        }
+    }
+
+    /**
+     * Copy the entries of the next page to the output.
+     *
+     * @param page the raw JSON page returned by Jira
+     */
+    public void append(byte[] page)
+    {
+        boolean pageHasValues = false;
+        boolean pageHasIsLast = false;
+        try (JsonParser parser = jsonFactory.createParser(page)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JiraIssueCreationException(INVALID_PAGE);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken valueToken = parser.nextToken();
+                if (VALUES.equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        generator.copyCurrentStructure(parser);
+                        count++;
+                    }
+                    pageHasValues = true;
+                } else if (IS_LAST.equals(fieldName) && valueToken.isBoolean()) {
+                    isLast = parser.getBooleanValue();
+                    pageHasIsLast = true;
+                } else if (TOTAL.equals(fieldName) && valueToken.isNumeric()) {
+                    total = parser.getIntValue();
+                    hasTotal = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new JiraIssueCreationException("Failed to parse JSON.", e);
+        }
+
+        if (!pageHasValues || !pageHasIsLast) {
+            throw new JiraIssueCreationException(INVALID_PAGE);
+        }
+    }
+
+    /**
+     * @return the number of entries copied so far, which is also the start of the next page
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the total number of entries announced by the last appended page
+     */
+    public int getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * @return {@code true} if the pages announced a total number of entries
+     */
+    public boolean hasTotal()
+    {
+        return hasTotal;
+    }
+
+    /**
+     * @return {@code true} if the last appended page is the last page of the result
+     */
+    public boolean isLast()
+    {
+        return isLast;
+    }
+
+    /**
+     * Close the merged document.
+     *
+     * @return the merged JSON
+     */
+    public String finish()
+    {
+        try {
+            generator.writeEndArray();
+            generator.writeNumberField(START_AT, 0);
+            generator.writeNumberField(MAX_RESULTS, count);
+            generator.writeNumberField(TOTAL, total);
+            generator.writeBooleanField(IS_LAST, true);
+            generator.writeEndObject();
+            generator.close();
+        } catch (IOException e) {
+            throw new JiraIssueCreationException("Failed to serialize an object as JSON.", e);
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+/**
+ * The fields of a Jira project that are needed to suggest it, kept instead of the whole project JSON returned by Jira.
+ *
+ * @version $Id$
+ */
+public class JiraProject
+{
+    private final String key;
+
+    private final String name;
+
+    private final String avatarURL;
+
+    /**
+     * Constructor.
+     *
+     * @param key the project key
+     * @param name the project name
+     * @param avatarURL the URL of the project avatar, {@code null} if the project has none
+     */
+    public JiraProject(String key, String name, String avatarURL)
+    {
+        this.key = key;
+        this.name = name;
+        this.avatarURL = avatarURL;
+    }
+
+    /**
+     * @return the project key
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return the project name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the URL of the project avatar, {@code null} if the project has none
+     */
+    public String getAvatarURL()
+    {
+        return avatarURL;
+    }
+}
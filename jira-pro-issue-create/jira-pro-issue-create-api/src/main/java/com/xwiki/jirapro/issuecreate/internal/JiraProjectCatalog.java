@@ -0,0 +1,239 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Keeps the list of projects of each Jira server in memory, so that project suggestions don't download and parse the
+ * whole project list on every keystroke.
+ * <p>
+ * A catalog older than the configured time to live ({@code jirapro.issuecreate.projectCatalog.ttl} in
+ * {@code xwiki.properties}, in seconds) is still served while a fresh copy is fetched in the background. Concurrent
+ * requests that miss the same catalog share a single download.
+ * <p>
+ * Only the fields used by the suggestions are kept. There can be a catalog per XWiki user (e.g. with OAuth), so the
+ * memory is bounded by the number of catalogs times the number of projects per catalog: larger catalogs are fetched
+ * on each use instead of being cached.
+ *
+ * @version $Id$
+ */
+@Component(roles = JiraProjectCatalog.class)
+@Singleton
+public class JiraProjectCatalog implements Initializable, Disposable
+{
+    private static final String TTL_PROPERTY = "jirapro.issuecreate.projectCatalog.ttl";
+
+    private static final long DEFAULT_TTL = 300;
+
+    private static final String CACHE_ID = "jirapro.issuecreate.projectCatalog";
+
+    /**
+     * The maximum number of cached catalogs.
+     */
+    private static final int CACHE_SIZE = 100;
+
+    /**
+     * The maximum number of projects of a cached catalog. With {@link #CACHE_SIZE}, this bounds the cache to half a
+     * million projects, i.e. about a hundred megabytes in the worst case.
+     */
+    private static final int MAX_CATALOG_PROJECTS = 5000;
+
+    /**
+     * The number of seconds after which a catalog that is not used anymore is dropped.
+     */
+    private static final int CACHE_MAX_IDLE = 3600;
+
+    private static final String KEY = "key";
+
+    private static final String NAME = "name";
+
+    private static final String AVATAR_URLS = "avatarUrls";
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private JiraJSONMapper jsonMapper;
+
+    @Inject
+    private Logger logger;
+
+    private Cache<Catalog> cache;
+
+    /**
+     * The catalogs being downloaded, by identity key.
+     */
+    private final Map<String, CompletableFuture<Catalog>> loadings = new ConcurrentHashMap<>();
+
+    /**
+     * The projects of a Jira server as seen by a Jira identity.
+     */
+    private static final class Catalog
+    {
+        private final List<JiraProject> projects;
+
+        private final long fetchTime = System.currentTimeMillis();
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Catalog(List<JiraProject> projects)
+        {
+            this.projects = projects;
+        }
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration cacheConfiguration = new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE);
+        cacheConfiguration.getLRUEvictionConfiguration().setMaxIdle(CACHE_MAX_IDLE);
+        try {
+            this.cache = cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the Jira project catalog cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        cache.dispose();
+    }
+
+    /**
+     * Get the projects of a Jira server.
+     *
+     * @param restClient the REST client of the Jira server
+     * @param identityKey identifies the Jira server and the identity the requests are sent with
+     * @return the projects, in the order returned by Jira
+     */
+    public List<JiraProject> getProjects(JiraIssueCreationRestClient restClient, String identityKey)
+    {
+        Catalog catalog = cache.get(identityKey);
+        if (catalog == null) {
+            catalog = JiraIssueCreationRestClient.await(load(restClient, identityKey));
+        } else if (isStale(catalog) && catalog.refreshing.compareAndSet(false, true)) {
+            Catalog staleCatalog = catalog;
+            load(restClient, identityKey).whenComplete((projects, e) -> {
+                if (e != null) {
+                    logger.warn("Failed to refresh the Jira project catalog: {}", e.getMessage());
+                    staleCatalog.refreshing.set(false);
+                }
+            });
+        }
+
+        return catalog.projects;
+    }
+
+    /**
+     * Download the catalog, unless it is already being downloaded for the same identity.
+     */
+    private CompletableFuture<Catalog> load(JiraIssueCreationRestClient restClient, String identityKey)
+    {
+        CompletableFuture<Catalog> loading = new CompletableFuture<>();
+        CompletableFuture<Catalog> runningLoading = loadings.putIfAbsent(identityKey, loading);
+        if (runningLoading != null) {
+            return runningLoading;
+        }
+
+        CompletableFuture<String> download;
+        try {
+            // The request is authenticated on the current thread, the rest happens in the background.
+            download = restClient.getProjectsAsync();
+        } catch (RuntimeException e) {
+            download = CompletableFuture.failedFuture(e);
+        }
+        download.thenApply(projectsJSON -> store(identityKey, parse(projectsJSON))).whenComplete((catalog, e) -> {
+            loadings.remove(identityKey, loading);
+            if (e == null) {
+                loading.complete(catalog);
+            } else {
+                loading.completeExceptionally(e);
+            }
+        });
+        return loading;
+    }
+
+    private Catalog store(String identityKey, List<JiraProject> projects)
+    {
+        Catalog catalog = new Catalog(projects);
+        if (projects.size() <= MAX_CATALOG_PROJECTS) {
+            cache.set(identityKey, catalog);
+        } else {
+            logger.debug("Not caching the Jira project catalog [{}] of [{}] projects.", identityKey, projects.size());
+            cache.remove(identityKey);
+        }
+        return catalog;
+    }
+
+    private boolean isStale(Catalog catalog)
+    {
+        long ttl = configuration.getProperty(TTL_PROPERTY, DEFAULT_TTL);
+        return System.currentTimeMillis() - catalog.fetchTime > ttl * 1000;
+    }
+
+    private List<JiraProject> parse(String projectsJSON)
+    {
+        JsonNode projectsTree = jsonMapper.asTree(projectsJSON);
+        if (!projectsTree.isArray()) {
+            throw new JiraIssueCreationException("Expected a JSON array in Jira response.");
+        }
+
+        List<JiraProject> projects = new ArrayList<>(projectsTree.size());
+        for (JsonNode projectJSON : projectsTree) {
+            String avatarURL = null;
+            JsonNode avatarUrls = projectJSON.get(AVATAR_URLS);
+            if (avatarUrls != null && avatarUrls.size() > 0) {
+                avatarURL = avatarUrls.elements().next().asText();
+            }
+            projects.add(new JiraProject(projectJSON.path(KEY).asText(), projectJSON.path(NAME).asText(), avatarURL));
+        }
+        return Collections.unmodifiableList(projects);
+    }
+}
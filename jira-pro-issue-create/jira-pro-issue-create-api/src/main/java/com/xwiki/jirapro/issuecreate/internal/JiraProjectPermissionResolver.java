@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+/**
+ * Resolves whether a Jira identity is allowed to create issues in a set of projects. The projects that are not known
+ * yet are checked in bulk with concurrent requests and the decisions are cached for a few minutes.
+ *
+ * @version $Id$
+ */
+@Component(roles = JiraProjectPermissionResolver.class)
+@Singleton
+public class JiraProjectPermissionResolver implements Initializable, Disposable
+{
+    private static final String CACHE_ID = "jirapro.issuecreate.projectPermissions";
+
+    private static final int CACHE_SIZE = 10000;
+
+    /**
+     * The number of seconds a permission decision is kept.
+     */
+    private static final int CACHE_LIFESPAN = 300;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<Boolean> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration configuration = new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE);
+        configuration.getLRUEvictionConfiguration().setLifespan(CACHE_LIFESPAN);
+        try {
+            this.cache = cacheManager.createNewCache(configuration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the Jira project permission cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        cache.dispose();
+    }
+
+    /**
+     * Check which of the given projects the Jira identity of the REST client can create issues in.
+     *
+     * @param restClient the REST client of the Jira server
+     * @param identityKey identifies the Jira server and the identity the requests are sent with
+     * @param projects the keys of the projects to check
+     * @return the create permission of each project
+     */
+    public Map<String, Boolean> canCreateIssues(JiraIssueCreationRestClient restClient, String identityKey,
+        List<String> projects)
+    {
+        Map<String, Boolean> permissions = new HashMap<>();
+        List<String> unknownProjects = new ArrayList<>();
+        for (String project : projects) {
+            Boolean permission = cache.get(getCacheKey(identityKey, project));
+            if (permission != null) {
+                permissions.put(project, permission);
+            } else {
+                unknownProjects.add(project);
+            }
+        }
+
+        if (!unknownProjects.isEmpty()) {
+            restClient.canCreateIssues(unknownProjects).forEach((project, permission) -> {
+                cache.set(getCacheKey(identityKey, project), permission);
+                permissions.put(project, permission);
+            });
+        }
+
+        return permissions;
+    }
+
+    private static String getCacheKey(String identityKey, String project)
+    {
+        return identityKey + '/' + project;
+    }
+}
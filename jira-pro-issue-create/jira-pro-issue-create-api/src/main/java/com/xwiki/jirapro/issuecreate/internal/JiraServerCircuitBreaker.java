@@ -0,0 +1,272 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Protects the wiki from a Jira server that is slow or down.
+ * <p>
+ * The number of concurrent calls to the server is bounded, so that a server that doesn't answer can't hold all the
+ * request threads of the wiki. The outcome of the latest calls is tracked as well: when too many of them failed or
+ * were slow, the circuit opens and the calls fail right away for a while. After that, a few trial calls are let
+ * through and the circuit closes again if they all succeed. The outcome of a call only counts in the state it was
+ * started in: e.g. a call that hung while the circuit was closed doesn't decide whether it closes again.
+ *
+ * @version $Id$
+ */
+public class JiraServerCircuitBreaker
+{
+    /**
+     * The maximum number of concurrent calls to the server. Calls above the connection pool size wait for a
+     * connection, calls above this limit are rejected.
+     */
+    private static final int MAX_CONCURRENT_CALLS = 40;
+
+    /**
+     * The number of latest calls the failure rate is computed on.
+     */
+    private static final int WINDOW_SIZE = 20;
+
+    /**
+     * The minimum number of calls in the window before the circuit can open.
+     */
+    private static final int MIN_CALLS = 10;
+
+    /**
+     * The percentage of failed or slow calls in the window above which the circuit opens.
+     */
+    private static final int FAILURE_RATE_THRESHOLD = 50;
+
+    /**
+     * Calls that take longer than this are counted as failed.
+     */
+    private static final long SLOW_CALL_THRESHOLD = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * How long the calls are rejected once the circuit opened.
+     */
+    private static final long OPEN_DURATION = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * The number of trial calls that must succeed to close the circuit again.
+     */
+    private static final int HALF_OPEN_CALLS = 3;
+
+    private enum State
+    {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * The permission to make a call, obtained with {@link #acquire()}.
+     */
+    public static final class Permit
+    {
+        private final long startTime;
+
+        private final long generation;
+
+        private final boolean trial;
+
+        private Permit(long startTime, long generation, boolean trial)
+        {
+            this.startTime = startTime;
+            this.generation = generation;
+            this.trial = trial;
+        }
+    }
+
+    private final String url;
+
+    private final LongSupplier clock;
+
+    private final Semaphore bulkhead = new Semaphore(MAX_CONCURRENT_CALLS);
+
+    private final boolean[] outcomes = new boolean[WINDOW_SIZE];
+
+    private int outcomeIndex;
+
+    private int outcomeCount;
+
+    private int failureCount;
+
+    private State state = State.CLOSED;
+
+    /**
+     * Incremented on each state change, so that the outcome of a call started in a previous state is ignored.
+     */
+    private long generation;
+
+    private long openedAt;
+
+    private int halfOpenPermits;
+
+    private int halfOpenSuccesses;
+
+    /**
+     * Constructor.
+     *
+     * @param url the URL of the protected Jira server, used in the error messages
+     */
+    public JiraServerCircuitBreaker(String url)
+    {
+        this(url, System::nanoTime);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param url the URL of the protected Jira server, used in the error messages
+     * @param clock provides the current time in nanoseconds
+     */
+    JiraServerCircuitBreaker(String url, LongSupplier clock)
+    {
+        this.url = url;
+        this.clock = clock;
+    }
+
+    /**
+     * Get the permission to call the server. Each successful acquisition must be followed by a call to
+     * {@link #release(Permit, boolean)} once the call completed, or to {@link #cancel(Permit)} if the server was not
+     * reached.
+     *
+     * @return the permission, to pass to {@link #release(Permit, boolean)} or {@link #cancel(Permit)}
+     * @throws JiraIssueCreationException if the server is considered unavailable or too many calls are running
+     */
+    public Permit acquire()
+    {
+        if (!bulkhead.tryAcquire()) {
+            throw new JiraIssueCreationException(
+                String.format("Too many concurrent requests to the Jira server [%s], please retry later.", url));
+        }
+        Permit permit = allowCall();
+        if (permit == null) {
+            bulkhead.release();
+            throw new JiraIssueCreationException(
+                String.format("The Jira server [%s] is currently unavailable, please retry later.", url));
+        }
+        return permit;
+    }
+
+    /**
+     * Record the outcome of a call and release its permission.
+     *
+     * @param permit the value returned by {@link #acquire()}
+     * @param failed whether the call failed
+     */
+    public void release(Permit permit, boolean failed)
+    {
+        bulkhead.release();
+        recordOutcome(permit, failed || clock.getAsLong() - permit.startTime > SLOW_CALL_THRESHOLD);
+    }
+
+    /**
+     * Release the permission of a call that didn't reach the server, e.g. because it was cancelled, without recording
+     * any outcome.
+     *
+     * @param permit the value returned by {@link #acquire()}
+     */
+    public void cancel(Permit permit)
+    {
+        bulkhead.release();
+        returnHalfOpenPermit(permit);
+    }
+
+    private synchronized void returnHalfOpenPermit(Permit permit)
+    {
+        // Let another call try instead of the cancelled trial call.
+        if (permit.trial && permit.generation == generation) {
+            halfOpenPermits++;
+        }
+    }
+
+    private synchronized Permit allowCall()
+    {
+        long now = clock.getAsLong();
+        if (state == State.OPEN) {
+            if (now - openedAt < OPEN_DURATION) {
+                return null;
+            }
+            setState(State.HALF_OPEN);
+            halfOpenPermits = HALF_OPEN_CALLS;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return null;
+            }
+            halfOpenPermits--;
+        }
+        return new Permit(now, generation, state == State.HALF_OPEN);
+    }
+
+    private synchronized void recordOutcome(Permit permit, boolean failed)
+    {
+        if (permit.generation != generation) {
+            // The call was started in a previous state.
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (failed) {
+                open();
+            } else if (++halfOpenSuccesses == HALF_OPEN_CALLS) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            if (outcomeCount == WINDOW_SIZE) {
+                failureCount -= outcomes[outcomeIndex] ? 1 : 0;
+            } else {
+                outcomeCount++;
+            }
+            outcomes[outcomeIndex] = failed;
+            failureCount += failed ? 1 : 0;
+            outcomeIndex = (outcomeIndex + 1) % WINDOW_SIZE;
+
+            if (outcomeCount >= MIN_CALLS && failureCount * 100 >= FAILURE_RATE_THRESHOLD * outcomeCount) {
+                open();
+            }
+        }
+    }
+
+    private void setState(State newState)
+    {
+        state = newState;
+        generation++;
+    }
+
+    private void open()
+    {
+        setState(State.OPEN);
+        openedAt = clock.getAsLong();
+    }
+
+    private void close()
+    {
+        setState(State.CLOSED);
+        outcomeIndex = 0;
+        outcomeCount = 0;
+        failureCount = 0;
+    }
+}
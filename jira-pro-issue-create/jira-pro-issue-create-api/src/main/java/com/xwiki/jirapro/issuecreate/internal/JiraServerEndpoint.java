@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.io.CloseMode;
+
+/**
+ * Long-lived connection state for a single Jira server: the parsed server URI, the target host, the pooled HTTP
+ * clients used to reach it, the executor reading their asynchronous responses and the circuit breaker guarding the
+ * calls.
+ *
+ * @version $Id$
+ */
+public class JiraServerEndpoint
+{
+    private final String url;
+
+    private final URI hostURI;
+
+    private final HttpHost target;
+
+    private final CloseableHttpClient httpClient;
+
+    private final CloseableHttpAsyncClient asyncClient;
+
+    private final Executor responseExecutor;
+
+    private final JiraServerCircuitBreaker circuitBreaker;
+
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * Constructor.
+     *
+     * @param url the Jira server URL
+     * @param httpClientFactory creates the pooled HTTP client dedicated to this server
+     * @param asyncClientFactory creates the started, pooled asynchronous HTTP client dedicated to this server
+     * @param responseExecutor the executor reading the asynchronous responses, shared by all the servers
+     */
+    public JiraServerEndpoint(String url, Supplier<CloseableHttpClient> httpClientFactory,
+        Supplier<CloseableHttpAsyncClient> asyncClientFactory, Executor responseExecutor)
+    {
+        this.url = url;
+        this.responseExecutor = responseExecutor;
+        // The URL is validated before creating the clients, which hold connections and threads.
+        try {
+            this.hostURI = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new JiraIssueCreationException("Could not parse the Jira Server URL.", e);
+        }
+        if (hostURI.getScheme() == null || hostURI.getHost() == null) {
+            throw new JiraIssueCreationException(
+                String.format("The Jira Server URL [%s] must have a scheme and a host.", url));
+        }
+        try {
+            this.target = new HttpHost(hostURI.getScheme(), hostURI.getHost(), hostURI.getPort());
+        } catch (IllegalArgumentException e) {
+            throw new JiraIssueCreationException("Invalid Jira Server URL.", e);
+        }
+        this.httpClient = httpClientFactory.get();
+        try {
+            this.asyncClient = asyncClientFactory.get();
+        } catch (RuntimeException e) {
+            this.httpClient.close(CloseMode.IMMEDIATE);
+            throw e;
+        }
+        this.circuitBreaker = new JiraServerCircuitBreaker(url);
+    }
+
+    /**
+     * @return the Jira server URL this endpoint was created for
+     */
+    public String getURL()
+    {
+        return url;
+    }
+
+    /**
+     * @return the parsed Jira server URI
+     */
+    public URI getHostURI()
+    {
+        return hostURI;
+    }
+
+    /**
+     * @return the Jira server host
+     */
+    public HttpHost getTarget()
+    {
+        return target;
+    }
+
+    /**
+     * @return the pooled HTTP client
+     */
+    public CloseableHttpClient getHttpClient()
+    {
+        return httpClient;
+    }
+
+    /**
+     * @return the pooled asynchronous HTTP client
+     */
+    public CloseableHttpAsyncClient getAsyncClient()
+    {
+        return asyncClient;
+    }
+
+    /**
+     * @return the executor reading the asynchronous responses, so that the I/O threads only perform the round trips
+     */
+    public Executor getResponseExecutor()
+    {
+        return responseExecutor;
+    }
+
+    /**
+     * Record that the endpoint is being used.
+     */
+    public void markUsed()
+    {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the number of milliseconds since the endpoint was last used
+     */
+    public long getIdleTime()
+    {
+        return System.currentTimeMillis() - lastUsed;
+    }
+
+    /**
+     * @return the circuit breaker guarding the calls to this server
+     */
+    public JiraServerCircuitBreaker getCircuitBreaker()
+    {
+        return circuitBreaker;
+    }
+
+    /**
+     * Release the pooled connections. Requests still running are allowed to complete.
+     */
+    public void close()
+    {
+        httpClient.close(CloseMode.GRACEFUL);
+        asyncClient.close(CloseMode.GRACEFUL);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.util.concurrent.CompletableFuture;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Caches the Jira user name matching an XWiki user, for each Jira server. XWiki users that don't exist in Jira are
+ * cached too, so that they don't cost a Jira call on each issue creation either. Failed lookups, e.g. because Jira
+ * answered with an error, are not cached.
+ * <p>
+ * The entries are kept for {@code jirapro.issuecreate.userCache.ttl} seconds (configured in
+ * {@code xwiki.properties}).
+ *
+ * @version $Id$
+ */
+@Component(roles = JiraUserCache.class)
+@Singleton
+public class JiraUserCache implements Initializable, Disposable
+{
+    private static final String TTL_PROPERTY = "jirapro.issuecreate.userCache.ttl";
+
+    private static final int DEFAULT_TTL = 60;
+
+    private static final String CACHE_ID = "jirapro.issuecreate.users";
+
+    private static final int CACHE_SIZE = 10000;
+
+    /**
+     * Cached for the users that don't exist in Jira.
+     */
+    private static final String UNKNOWN_USER = "";
+
+    private static final String NAME = "name";
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private JiraJSONMapper jsonMapper;
+
+    private Cache<String> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration cacheConfiguration = new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE);
+        cacheConfiguration.getLRUEvictionConfiguration()
+            .setLifespan(configuration.getProperty(TTL_PROPERTY, DEFAULT_TTL));
+        try {
+            this.cache = cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the Jira user cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        cache.dispose();
+    }
+
+    /**
+     * Get the name of the Jira user matching an XWiki user.
+     *
+     * @param restClient the REST client of the Jira server
+     * @param serverKey identifies the Jira server
+     * @param userReference the XWiki user
+     * @return the Jira user name, or {@code null} if the user doesn't exist in Jira
+     */
+    public CompletableFuture<String> getJiraUserNameAsync(JiraIssueCreationRestClient restClient, String serverKey,
+        DocumentReference userReference)
+    {
+        String cacheKey = serverKey + '/' + userReference;
+        String jiraUserName = cache.get(cacheKey);
+        if (jiraUserName != null) {
+            return CompletableFuture.completedFuture(toUserName(jiraUserName));
+        }
+
+        return restClient.getUserAsync(userReference.getName()).thenApply(jiraResponse -> {
+            // A missing user is either a 404 or a successful answer without a name.
+            JsonNode jiraUser = jiraResponse != null ? jsonMapper.asTree(jiraResponse) : null;
+            String fetchedUserName =
+                jiraUser != null && jiraUser.has(NAME) ? jiraUser.get(NAME).asText() : UNKNOWN_USER;
+            cache.set(cacheKey, fetchedUserName);
+            return toUserName(fetchedUserName);
+        });
+    }
+
+    private static String toUserName(String cachedUserName)
+    {
+        return UNKNOWN_USER.equals(cachedUserName) ? null : cachedUserName;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link JiraIssueInput}.
+ *
+ * @version $Id$
+ */
+class JiraIssueInputTest
+{
+    private static final String ISSUE = "{\"fields\":{\"project\":{\"key\":\"XWIKI\"},\"issuetype\":{\"id\":\"10001\"},"
+        + "\"summary\":\"A summary\"}}";
+
+    private static final String NESTED_ISSUE = "{\"update\":{\"labels\":[{\"add\":\"a\"},{\"add\":\"b\"}]},"
+        + "\"fields\":{\"summary\":\"Caf\\u00e9 \\\"quoted\\\"\\n\",\"issuetype\":{\"id\":\"3\",\"name\":\"Task\"},"
+        + "\"customfield_1\":{\"reporter\":{\"name\":\"nested\"},\"project\":{\"key\":\"OTHER\"}},"
+        + "\"customfield_2\":[[1,2.5,-3e10],{\"a\":[true,false,null]},[]],\"customfield_3\":12345678901234567890,"
+        + "\"project\":{\"id\":\"1\",\"key\":\"XWIKI\"},\"customfield_4\":{}},"
+        + "\"properties\":[{\"key\":\"k\",\"value\":{\"fields\":{\"reporter\":1}}}]}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void extractsTheProjectAndIssueType()
+    {
+        JiraIssueInput input = parse(ISSUE);
+
+        assertEquals("XWIKI", input.getProject());
+        assertEquals("10001", input.getIssueType());
+    }
+
+    @Test
+    void addsTheReporterToTheFields() throws IOException
+    {
+        assertEquals("{\"fields\":{\"project\":{\"key\":\"XWIKI\"},\"issuetype\":{\"id\":\"10001\"},"
+            + "\"summary\":\"A summary\",\"reporter\":{\"name\":\"jdoe\"}}}", write(parse(ISSUE).toEntity("jdoe")));
+    }
+
+    @Test
+    void copiesTheInputWithoutReporter() throws IOException
+    {
+        assertEquals(ISSUE, write(parse(ISSUE).toEntity(null)));
+    }
+
+    @Test
+    void copiesNestedObjectsAndArraysLikeTheTreeBasedCopy() throws IOException
+    {
+        JiraIssueInput input = parse(NESTED_ISSUE);
+
+        // Only the direct children of the fields are taken into account.
+        assertEquals("XWIKI", input.getProject());
+        assertEquals("3", input.getIssueType());
+        assertEquals(copyWithTree(NESTED_ISSUE, "jdoe"), write(input.toEntity("jdoe")));
+        assertEquals(copyWithTree(NESTED_ISSUE, null), write(input.toEntity(null)));
+    }
+
+    @Test
+    void createsARepeatableEntity() throws IOException
+    {
+        HttpEntity entity = parse(ISSUE).toEntity("jdoe");
+
+        assertEquals(write(entity), write(entity));
+        try (InputStream content = entity.getContent()) {
+            assertArrayEquals(write(entity).getBytes(StandardCharsets.UTF_8), content.readAllBytes());
+        }
+    }
+
+    @Test
+    void rejectsAnExistingReporter()
+    {
+        assertInvalid("Unexpected reporter field.", "{\"fields\":{\"project\":{\"key\":\"XWIKI\"},"
+            + "\"issuetype\":{\"id\":\"1\"},\"reporter\":{\"name\":\"x\"}}}");
+        assertInvalid("Unexpected reporter field.",
+            "{\"fields\":{\"reporter\":null,\"project\":{\"key\":\"XWIKI\"},\"issuetype\":{\"id\":\"1\"}}}");
+    }
+
+    @Test
+    void rejectsMissingFields()
+    {
+        assertInvalid("Invalid Input Data.", "{\"update\":{}}");
+        assertInvalid("Invalid Input Data.", "{\"fields\":[]}");
+        assertInvalid("Invalid Input Data.", "{\"other\":{\"fields\":{}}}");
+    }
+
+    @Test
+    void rejectsMissingOrInvalidProjectAndIssueType()
+    {
+        assertInvalid("Missing issuetype field.", "{\"fields\":{\"project\":{\"key\":\"XWIKI\"}}}");
+        assertInvalid("Missing project field.", "{\"fields\":{\"issuetype\":{\"id\":\"1\"}}}");
+        assertInvalid("Invalid issueType field.",
+            "{\"fields\":{\"project\":{\"key\":\"XWIKI\"},\"issuetype\":{\"id\":1}}}");
+        assertInvalid("Invalid issueType field.",
+            "{\"fields\":{\"project\":{\"key\":\"XWIKI\"},\"issuetype\":\"1\"}}");
+        assertInvalid("Invalid project field.",
+            "{\"fields\":{\"project\":{\"id\":\"1\"},\"issuetype\":{\"id\":\"1\"}}}");
+        assertInvalid("Invalid project field.",
+            "{\"fields\":{\"project\":[\"XWIKI\"],\"issuetype\":{\"id\":\"1\"}}}");
+    }
+
+    @Test
+    void rejectsMalformedJSON()
+    {
+        assertInvalid("Failed to parse JSON.", "{\"fields\":{\"project\":{\"key\":\"XWIKI\"}");
+        assertInvalid("Failed to parse JSON.", "{\"fields\":{\"project\":}}");
+        assertInvalid("Invalid Input Data.", "[{\"fields\":{}}]");
+        assertInvalid("Invalid Input Data.", "");
+    }
+
+    @Test
+    void readsIssueDataUpToTheMaximumSize() throws IOException
+    {
+        byte[] content = ISSUE.getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(content, JiraIssueInput.read(new ByteArrayInputStream(content), -1, content.length));
+        assertArrayEquals(content,
+            JiraIssueInput.read(new ByteArrayInputStream(content), content.length, content.length));
+    }
+
+    @Test
+    void rejectsIssueDataAboveTheMaximumSize()
+    {
+        byte[] content = ISSUE.getBytes(StandardCharsets.UTF_8);
+        int maxSize = content.length - 1;
+
+        JiraIssueCreationException exception = assertThrows(JiraIssueCreationException.class,
+            () -> JiraIssueInput.read(new ByteArrayInputStream(content), -1, maxSize));
+        assertEquals(String.format("The issue data exceeds the maximum size of [%d] bytes.", maxSize),
+            exception.getMessage());
+
+        // The announced length is checked before reading anything.
+        assertThrows(JiraIssueCreationException.class,
+            () -> JiraIssueInput.read(InputStream.nullInputStream(), content.length, maxSize));
+    }
+
+    private JiraIssueInput parse(String json)
+    {
+        return JiraIssueInput.parse(json.getBytes(StandardCharsets.UTF_8), objectMapper.getFactory());
+    }
+
+    private void assertInvalid(String expectedMessage, String json)
+    {
+        JiraIssueCreationException exception = assertThrows(JiraIssueCreationException.class, () -> parse(json));
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    private static String write(HttpEntity entity) throws IOException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        entity.writeTo(outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The way the issue data was copied before it was streamed: parsed into a tree, modified and serialized back.
+     */
+    private String copyWithTree(String json, String reporter) throws IOException
+    {
+        JsonNode issue = objectMapper.readTree(json);
+        if (reporter != null) {
+            ((ObjectNode) issue.get("fields")).putObject("reporter").put("name", reporter);
+        }
+        return objectMapper.writeValueAsString(issue);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the shared {@link JiraJSONMapper} with the previous approach of creating a new {@link ObjectMapper} for
+ * each call, on payloads shaped like the ones handled when creating an issue.
+ * <p>
+ * Run it with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.xwiki.jirapro.issuecreate.internal.JiraJSONMapperBenchmark}.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JiraJSONMapperBenchmark
+{
+    private static final String ISSUE = "{\"fields\":{\"project\":{\"key\":\"XWIKI\"},"
+        + "\"issuetype\":{\"id\":\"10001\"},\"summary\":\"Broken link in the macro output\","
+        + "\"description\":\"Steps to reproduce: insert the macro, save the page, follow the link.\","
+        + "\"labels\":[\"jira\",\"macro\"],\"priority\":{\"id\":\"3\"}}}";
+
+    private final JiraJSONMapper sharedMapper = new JiraJSONMapper();
+
+    private final List<Map<String, Object>> suggestions = List.of(
+        Map.of("key", "XWIKI", "name", "XWiki Platform", "id", "10000"),
+        Map.of("key", "XCOMMONS", "name", "XWiki Commons", "id", "10001"),
+        Map.of("key", "XRENDERING", "name", "XWiki Rendering", "id", "10002"));
+
+    /**
+     * @return the parsed issue, using the shared mapper
+     */
+    @Benchmark
+    public JsonNode asTreeShared()
+    {
+        return sharedMapper.asTree(ISSUE);
+    }
+
+    /**
+     * @return the parsed issue, using a new mapper
+     * @throws IOException if the JSON can't be parsed
+     */
+    @Benchmark
+    public JsonNode asTreeNewMapper() throws IOException
+    {
+        return new ObjectMapper().readTree(ISSUE);
+    }
+
+    /**
+     * @return the serialized suggestions, using the shared mapper
+     */
+    @Benchmark
+    public String asJSONShared()
+    {
+        return sharedMapper.asJSON(suggestions);
+    }
+
+    /**
+     * @return the serialized suggestions, using a new mapper
+     * @throws IOException if the suggestions can't be serialized
+     */
+    @Benchmark
+    public String asJSONNewMapper() throws IOException
+    {
+        return new ObjectMapper().writeValueAsString(suggestions);
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args unused
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(JiraJSONMapperBenchmark.class.getSimpleName()).build()).run();
+    }
+}
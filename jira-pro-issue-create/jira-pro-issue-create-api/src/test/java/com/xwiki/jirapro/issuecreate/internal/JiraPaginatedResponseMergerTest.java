@@ -0,0 +1,184 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link JiraPaginatedResponseMerger}.
+ *
+ * @version $Id$
+ */
+class JiraPaginatedResponseMergerTest
+{
+    /**
+     * The pages requested so far, by start index, completed by the tests in the order they choose.
+     */
+    private final Map<Integer, CompletableFuture<byte[]>> requestedPages = new LinkedHashMap<>();
+
+    private final JiraPaginatedResponseMerger merger = new JiraPaginatedResponseMerger(new JsonFactory(), start -> {
+        CompletableFuture<byte[]> page = new CompletableFuture<>();
+        requestedPages.put(start, page);
+        return page;
+    });
+
+    @Test
+    void returnsASinglePage()
+    {
+        CompletableFuture<String> merged = merger.mergeAsync();
+        complete(0, "{\"total\":2,\"isLast\":true,\"values\":[0,1]}");
+
+        assertEquals("{\"values\":[0,1],\"startAt\":0,\"maxResults\":2,\"total\":2,\"isLast\":true}", merged.join());
+    }
+
+    @Test
+    void mergesConcurrentPagesInOrder()
+    {
+        CompletableFuture<String> merged = merger.mergeAsync();
+        complete(0, page(0, 2, 8, false));
+        assertEquals(List.of(0, 2, 4, 6), new ArrayList<>(requestedPages.keySet()));
+
+        // The pages complete in reverse order.
+        complete(6, page(6, 2, 8, true));
+        complete(4, page(4, 2, 8, false));
+        complete(2, page(2, 2, 8, false));
+
+        assertEquals("{\"values\":[0,1,2,3,4,5,6,7],\"startAt\":0,\"maxResults\":8,\"total\":8,\"isLast\":true}",
+            merged.join());
+    }
+
+    @Test
+    void boundsThePagesInFlight()
+    {
+        CompletableFuture<String> merged = merger.mergeAsync();
+        complete(0, page(0, 1, 7, false));
+        assertEquals(List.of(0, 1, 2, 3, 4), new ArrayList<>(requestedPages.keySet()));
+
+        // A later page doesn't free a slot until the pages before it are merged.
+        complete(2, page(2, 1, 7, false));
+        assertEquals(5, requestedPages.size());
+
+        complete(1, page(1, 1, 7, false));
+        assertEquals(Set.of(0, 1, 2, 3, 4, 5, 6), requestedPages.keySet());
+
+        complete(3, page(3, 1, 7, false));
+        complete(4, page(4, 1, 7, false));
+        complete(5, page(5, 1, 7, false));
+        complete(6, page(6, 1, 7, true));
+
+        assertEquals("{\"values\":[0,1,2,3,4,5,6],\"startAt\":0,\"maxResults\":7,\"total\":7,\"isLast\":true}",
+            merged.join());
+    }
+
+    @Test
+    void fetchesTheEntriesAddedWhileFetching()
+    {
+        CompletableFuture<String> merged = merger.mergeAsync();
+        complete(0, page(0, 2, 4, false));
+        // Two entries were added after the first page was fetched.
+        complete(2, page(2, 2, 6, false));
+        assertFalse(merged.isDone());
+
+        complete(4, page(4, 2, 6, true));
+
+        assertEquals("{\"values\":[0,1,2,3,4,5],\"startAt\":0,\"maxResults\":6,\"total\":6,\"isLast\":true}",
+            merged.join());
+    }
+
+    @Test
+    void acceptsAnEmptyLastPage()
+    {
+        CompletableFuture<String> merged = merger.mergeAsync();
+        complete(0, page(0, 2, 5, false));
+        // An entry was removed after the first page was fetched.
+        complete(2, page(2, 2, 4, false));
+        complete(4, "{\"startAt\":4,\"total\":4,\"isLast\":true,\"values\":[]}");
+
+        assertEquals("{\"values\":[0,1,2,3],\"startAt\":0,\"maxResults\":4,\"total\":4,\"isLast\":true}",
+            merged.join());
+    }
+
+    @Test
+    void walksThePagesWithoutTotal()
+    {
+        CompletableFuture<String> merged = merger.mergeAsync();
+        complete(0, "{\"isLast\":false,\"values\":[0,1]}");
+        assertEquals(List.of(0, 2), new ArrayList<>(requestedPages.keySet()));
+
+        complete(2, "{\"isLast\":true,\"values\":[2]}");
+
+        assertTrue(merged.isDone());
+        assertEquals("{\"values\":[0,1,2],\"startAt\":0,\"maxResults\":3,\"total\":0,\"isLast\":true}",
+            merged.join());
+    }
+
+    @Test
+    void failsWhenAPageFails()
+    {
+        CompletableFuture<String> merged = merger.mergeAsync();
+        complete(0, page(0, 2, 6, false));
+        requestedPages.get(4).completeExceptionally(new JiraIssueCreationException("Failed"));
+        complete(2, page(2, 2, 6, false));
+
+        CompletionException exception = assertThrows(CompletionException.class, merged::join);
+        assertTrue(exception.getCause() instanceof JiraIssueCreationException);
+    }
+
+    @Test
+    void failsWhenAPageIsInvalid()
+    {
+        CompletableFuture<String> merged = merger.mergeAsync();
+        complete(0, "{\"total\":4,\"values\":[0,1]}");
+
+        CompletionException exception = assertThrows(CompletionException.class, merged::join);
+        assertTrue(exception.getCause() instanceof JiraIssueCreationException);
+    }
+
+    private void complete(int start, String page)
+    {
+        requestedPages.get(start).complete(page.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String page(int start, int size, int total, boolean isLast)
+    {
+        StringBuilder values = new StringBuilder();
+        for (int entry = start; entry < Math.min(start + size, total); entry++) {
+            values.append(values.length() > 0 ? "," : "").append(entry);
+        }
+        return String.format("{\"startAt\":%d,\"maxResults\":%d,\"total\":%d,\"isLast\":%b,\"values\":[%s]}", start,
+            size, total, isLast, values);
+    }
+}
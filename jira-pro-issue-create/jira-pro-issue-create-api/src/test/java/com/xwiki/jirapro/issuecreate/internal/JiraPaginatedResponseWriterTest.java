@@ -0,0 +1,125 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link JiraPaginatedResponseWriter}.
+ *
+ * @version $Id$
+ */
+class JiraPaginatedResponseWriterTest
+{
+    private final JiraPaginatedResponseWriter writer = new JiraPaginatedResponseWriter(new JsonFactory());
+
+    @Test
+    void mergesThePagesInOrder()
+    {
+        writer.append(page("{\"startAt\":0,\"maxResults\":2,\"total\":5,\"isLast\":false,"
+            + "\"values\":[{\"id\":\"1\"},{\"id\":\"2\"}]}"));
+        assertEquals(2, writer.getCount());
+        assertFalse(writer.isLast());
+
+        writer.append(page("{\"values\":[{\"id\":\"3\",\"nested\":{\"a\":[1,2]}},[4]],\"isLast\":false,\"total\":5}"));
+        writer.append(page("{\"startAt\":4,\"total\":5,\"isLast\":true,\"values\":[\"five\"]}"));
+
+        assertEquals(5, writer.getCount());
+        assertTrue(writer.isLast());
+        assertEquals("{\"values\":[{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":\"3\",\"nested\":{\"a\":[1,2]}},[4],\"five\"],"
+            + "\"startAt\":0,\"maxResults\":5,\"total\":5,\"isLast\":true}", writer.finish());
+    }
+
+    @Test
+    void keepsTheTotalOfTheLastPage()
+    {
+        writer.append(page("{\"total\":4,\"isLast\":false,\"values\":[1,2]}"));
+        assertTrue(writer.hasTotal());
+        assertEquals(4, writer.getTotal());
+
+        // Entries were added between the two pages.
+        writer.append(page("{\"total\":6,\"isLast\":false,\"values\":[3,4]}"));
+        assertEquals(6, writer.getTotal());
+        assertFalse(writer.isLast());
+
+        writer.append(page("{\"total\":6,\"isLast\":true,\"values\":[5,6]}"));
+        assertEquals("{\"values\":[1,2,3,4,5,6],\"startAt\":0,\"maxResults\":6,\"total\":6,\"isLast\":true}",
+            writer.finish());
+    }
+
+    @Test
+    void acceptsAnEmptyLastPage()
+    {
+        writer.append(page("{\"total\":2,\"isLast\":false,\"values\":[1,2]}"));
+        writer.append(page("{\"total\":2,\"isLast\":true,\"values\":[]}"));
+
+        assertEquals(2, writer.getCount());
+        assertTrue(writer.isLast());
+        assertEquals("{\"values\":[1,2],\"startAt\":0,\"maxResults\":2,\"total\":2,\"isLast\":true}",
+            writer.finish());
+    }
+
+    @Test
+    void mergesPagesWithoutTotal()
+    {
+        writer.append(page("{\"isLast\":true,\"values\":[1]}"));
+
+        assertFalse(writer.hasTotal());
+        assertEquals("{\"values\":[1],\"startAt\":0,\"maxResults\":1,\"total\":0,\"isLast\":true}", writer.finish());
+    }
+
+    @Test
+    void rejectsPagesWithoutValues()
+    {
+        assertThrows(JiraIssueCreationException.class, () -> writer.append(page("{\"isLast\":true}")));
+    }
+
+    @Test
+    void rejectsPagesWithoutIsLast()
+    {
+        assertThrows(JiraIssueCreationException.class, () -> writer.append(page("{\"values\":[]}")));
+    }
+
+    @Test
+    void rejectsNonObjectPages()
+    {
+        assertThrows(JiraIssueCreationException.class, () -> writer.append(page("[1,2]")));
+    }
+
+    @Test
+    void rejectsMalformedPages()
+    {
+        assertThrows(JiraIssueCreationException.class, () -> writer.append(page("{\"values\":[1,")));
+    }
+
+    private static byte[] page(String json)
+    {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
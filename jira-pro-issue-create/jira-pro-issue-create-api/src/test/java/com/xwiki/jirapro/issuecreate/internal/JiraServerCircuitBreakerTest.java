@@ -0,0 +1,218 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.issuecreate.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for {@link JiraServerCircuitBreaker}.
+ *
+ * @version $Id$
+ */
+class JiraServerCircuitBreakerTest
+{
+    private final AtomicLong clock = new AtomicLong();
+
+    private JiraServerCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.circuitBreaker = new JiraServerCircuitBreaker("https://jira.example.com", clock::get);
+    }
+
+    @Test
+    void opensAfterTooManyFailures()
+    {
+        failCalls(4);
+        for (int i = 0; i < 6; i++) {
+            circuitBreaker.release(circuitBreaker.acquire(), false);
+        }
+        failCalls(1);
+        assertDoesNotThrow(circuitBreaker::acquire);
+
+        failCalls(1);
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+    }
+
+    @Test
+    void countsSlowCallsAsFailures()
+    {
+        for (int i = 0; i < 10; i++) {
+            JiraServerCircuitBreaker.Permit permit = circuitBreaker.acquire();
+            advance(11);
+            circuitBreaker.release(permit, false);
+        }
+
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+    }
+
+    @Test
+    void closesAfterSuccessfulTrialCalls()
+    {
+        open();
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+
+        advance(30);
+        JiraServerCircuitBreaker.Permit first = circuitBreaker.acquire();
+        JiraServerCircuitBreaker.Permit second = circuitBreaker.acquire();
+        JiraServerCircuitBreaker.Permit third = circuitBreaker.acquire();
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+
+        circuitBreaker.release(first, false);
+        circuitBreaker.release(second, false);
+        circuitBreaker.release(third, false);
+        assertAvailable();
+    }
+
+    @Test
+    void reopensWhenATrialCallFails()
+    {
+        open();
+        advance(30);
+
+        circuitBreaker.release(circuitBreaker.acquire(), true);
+
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+    }
+
+    @Test
+    void ignoresCallsStartedBeforeTheCircuitOpened()
+    {
+        JiraServerCircuitBreaker.Permit straggler = circuitBreaker.acquire();
+        open();
+        advance(30);
+        JiraServerCircuitBreaker.Permit first = circuitBreaker.acquire();
+        JiraServerCircuitBreaker.Permit second = circuitBreaker.acquire();
+        JiraServerCircuitBreaker.Permit third = circuitBreaker.acquire();
+
+        // The hung call completes while the trial calls are running.
+        circuitBreaker.release(straggler, true);
+        circuitBreaker.release(first, false);
+        circuitBreaker.release(second, false);
+        circuitBreaker.release(third, false);
+
+        assertAvailable();
+    }
+
+    @Test
+    void ignoresTrialCallsCompletedAfterTheCircuitReopened()
+    {
+        open();
+        advance(30);
+        JiraServerCircuitBreaker.Permit failed = circuitBreaker.acquire();
+        JiraServerCircuitBreaker.Permit late = circuitBreaker.acquire();
+        circuitBreaker.release(failed, true);
+
+        advance(30);
+        JiraServerCircuitBreaker.Permit first = circuitBreaker.acquire();
+        JiraServerCircuitBreaker.Permit second = circuitBreaker.acquire();
+        circuitBreaker.release(late, true);
+        circuitBreaker.release(first, false);
+        circuitBreaker.release(second, false);
+        circuitBreaker.release(circuitBreaker.acquire(), false);
+
+        assertAvailable();
+    }
+
+    @Test
+    void cancelledTrialCallGivesBackItsPermit()
+    {
+        open();
+        advance(30);
+        JiraServerCircuitBreaker.Permit cancelled = circuitBreaker.acquire();
+        circuitBreaker.acquire();
+        circuitBreaker.acquire();
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+
+        circuitBreaker.cancel(cancelled);
+
+        assertDoesNotThrow(circuitBreaker::acquire);
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+    }
+
+    @Test
+    void cancelledCallFromAnotherStateDoesNotAddTrialCalls()
+    {
+        JiraServerCircuitBreaker.Permit straggler = circuitBreaker.acquire();
+        open();
+        advance(30);
+        circuitBreaker.acquire();
+        circuitBreaker.acquire();
+        circuitBreaker.acquire();
+
+        circuitBreaker.cancel(straggler);
+
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+    }
+
+    @Test
+    void limitsTheConcurrentCalls()
+    {
+        for (int i = 0; i < 40; i++) {
+            circuitBreaker.acquire();
+        }
+        assertThrows(JiraIssueCreationException.class, circuitBreaker::acquire);
+    }
+
+    @Test
+    void releasesTheConcurrentCallsOnCancel()
+    {
+        JiraServerCircuitBreaker.Permit permit = circuitBreaker.acquire();
+        for (int i = 1; i < 40; i++) {
+            circuitBreaker.acquire();
+        }
+
+        circuitBreaker.cancel(permit);
+
+        assertDoesNotThrow(circuitBreaker::acquire);
+    }
+
+    private void open()
+    {
+        failCalls(10);
+    }
+
+    private void failCalls(int count)
+    {
+        for (int i = 0; i < count; i++) {
+            circuitBreaker.release(circuitBreaker.acquire(), true);
+        }
+    }
+
+    private void advance(long seconds)
+    {
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private void assertAvailable()
+    {
+        for (int i = 0; i < 5; i++) {
+            assertDoesNotThrow(() -> circuitBreaker.release(circuitBreaker.acquire(), false));
+        }
+    }
+}
@@ -19,55 +19,33 @@
  */
 package com.xwiki.jirapro.oauth.internal;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.inject.Inject;
-import javax.inject.Named;
 import javax.inject.Provider;
 
 import org.apache.hc.client5.http.ContextBuilder;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequest;
 import org.apache.hc.core5.http.HttpHost;
-import org.slf4j.Logger;
-import org.xwiki.component.annotation.Component;
-import org.xwiki.component.annotation.InstantiationStrategy;
-import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.contrib.jira.config.JIRAAuthenticator;
-import org.xwiki.contrib.oidc.OAuth2ClientManager;
-import org.xwiki.contrib.oidc.OAuth2Token;
-import org.xwiki.contrib.oidc.OAuth2TokenStore;
-import org.xwiki.contrib.oidc.auth.store.OIDCClientConfiguration;
-import org.xwiki.contrib.oidc.auth.store.OIDCClientConfigurationStore;
-import org.xwiki.job.Job;
-import org.xwiki.localization.ContextualLocalizationManager;
-import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.FormatBlock;
 import org.xwiki.rendering.block.GroupBlock;
-import org.xwiki.rendering.block.LinkBlock;
-import org.xwiki.rendering.block.SpaceBlock;
-import org.xwiki.rendering.block.WordBlock;
-import org.xwiki.rendering.listener.Format;
-import org.xwiki.rendering.listener.reference.ResourceReference;
-import org.xwiki.rendering.listener.reference.ResourceType;
 
 import com.atlassian.jira.rest.client.api.AuthenticationHandler;
 import com.xpn.xwiki.XWikiContext;
-import com.xwiki.licensing.Licensor;
+import com.xpn.xwiki.web.XWikiRequest;
 
 /**
  * JIRA Rest Client provider with OAuth configuration.
+ * <p>
+ * Instances are created by {@link JIRAOAuthAuthenticatorFactory} for each configured JIRA server. They are immutable
+ * and shared by all the threads using that server.
  *
  * @version $Id$
  * @since 1.0.0
  */
-@Component
-@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
-@Named(JIRAOAuthAuthenticator.HINT)
 public class JIRAOAuthAuthenticator implements JIRAAuthenticator
 {
     /**
@@ -75,47 +53,49 @@ public class JIRAOAuthAuthenticator implements JIRAAuthenticator
      */
     public static final String HINT = "oauth";
 
-    private static final String BLOCK_PARAM_CLASS = "class";
-
-    private static final String BLOCK_PARAM_CLASS_VALUE_WARNINGMESSAGE = "box warningmessage";
-
-    private static final String QUERY_STRING = "queryString";
-
-    private String configurationName;
-
-    private boolean isRequiringAuthentication;
+    /**
+     * The request attribute under which the tokens resolved during the current request are kept.
+     */
+    private static final String RESOLVED_TOKENS_ATTRIBUTE = "jirapro.oauth.resolvedTokens";
 
-    @Inject
-    private Provider<XWikiContext> contextProvider;
+    /**
+     * The number of milliseconds a resolved token is reused, which is not longer than the margin the token manager keeps
+     * before the token expiry, so that a reused token is never expired.
+     */
+    private static final long RESOLVED_TOKEN_LIFESPAN = 5_000;
 
-    @Inject
-    private OIDCClientConfigurationStore clientConfigurationStore;
+    private final String configurationName;
 
-    @Inject
-    private OAuth2ClientManager oAuth2ClientManager;
+    private final boolean isRequiringAuthentication;
 
-    @Inject
-    private OAuth2TokenStore tokenStore;
+    private final Provider<XWikiContext> contextProvider;
 
-    @Inject
-    private Logger logger;
+    private final JIRAOAuthTokenManager tokenManager;
 
-    @Inject
-    private ContextualLocalizationManager localization;
+    private final JIRAOAuthWarningBlockProvider warningBlockProvider;
 
-    @Inject
-    private Licensor licensor;
+    private final JIRAOAuthLicenseChecker licenseChecker;
 
     /**
-     * Configure the authenticator with the parameter set into the configuration.
+     * Create an authenticator with the parameters set into the configuration.
      *
      * @param configurationName see {@link #getConfigurationName()}
      * @param isRequiringAuthentication See {@link #isRequiringAuthentication()}
+     * @param contextProvider provides the XWiki context of the current request
+     * @param tokenManager provides the OAuth tokens
+     * @param warningBlockProvider provides the warning shown to the users that need to authenticate
+     * @param licenseChecker tells if JIRA Pro OAuth is licensed
      */
-    public void configure(String configurationName, boolean isRequiringAuthentication)
+    JIRAOAuthAuthenticator(String configurationName, boolean isRequiringAuthentication,
+        Provider<XWikiContext> contextProvider, JIRAOAuthTokenManager tokenManager,
+        JIRAOAuthWarningBlockProvider warningBlockProvider, JIRAOAuthLicenseChecker licenseChecker)
     {
         this.configurationName = configurationName;
         this.isRequiringAuthentication = isRequiringAuthentication;
+        this.contextProvider = contextProvider;
+        this.tokenManager = tokenManager;
+        this.warningBlockProvider = warningBlockProvider;
+        this.licenseChecker = licenseChecker;
     }
 
     @Override
@@ -149,37 +129,65 @@ public class JIRAOAuthAuthenticator implements JIRAAuthenticator
      */
     public Optional<String> getOAuthToken()
     {
-        if (!licensor.hasLicensure(
-            new DocumentReference(contextProvider.get().getWikiId(), List.of("XWiki", "JIRAPro", "OAuth"), "WebHome")))
-        {
+        XWikiContext xcontext = contextProvider.get();
+        if (xcontext.getUserReference() == null) {
             return Optional.empty();
         }
-        if (contextProvider.get().getUserReference() == null) {
-            return Optional.empty();
+
+        // The token is needed several times per macro, resolve it only once per request.
+        Map<String, ResolvedToken> resolvedTokens = getResolvedTokens(xcontext);
+        if (resolvedTokens == null) {
+            return resolveToken();
         }
-        try {
-            // Make sure that the token is up to date
-            OIDCClientConfiguration configuration =
-                clientConfigurationStore.getOIDCClientConfiguration(configurationName);
-            Job tokenRenewalJob = oAuth2ClientManager.renew(configuration);
-            if (tokenRenewalJob != null) {
-                try {
-                    tokenRenewalJob.join();
-                } catch (InterruptedException e) {
-                    logger.error("Can't get renewal job", e);
-                    return Optional.empty();
-                }
-            }
+        String key = xcontext.getWikiId() + ':' + xcontext.getUserReference() + ':' + configurationName;
+        ResolvedToken resolvedToken = resolvedTokens.get(key);
+        if (resolvedToken == null || !resolvedToken.isRecent()) {
+            resolvedToken = new ResolvedToken(resolveToken());
+            resolvedTokens.put(key, resolvedToken);
+        }
+        return resolvedToken.token;
+    }
 
-            OAuth2Token token = tokenStore.getToken(configuration);
-            if (token != null) {
-                return Optional.of(token.getAccessToken());
-            } else {
-                return Optional.empty();
-            }
-        } catch (Exception e) {
-            logger.error("Can't get OAuth token", e);
-            return Optional.empty();
+    private Optional<String> resolveToken()
+    {
+        return licenseChecker.hasLicensure() ? tokenManager.getToken(configurationName) : Optional.empty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ResolvedToken> getResolvedTokens(XWikiContext xcontext)
+    {
+        // The memo lives with the request, not with the context which can be cloned or outlive it (e.g. in jobs).
+        XWikiRequest request = xcontext.getRequest();
+        if (request == null) {
+            return null;
+        }
+        Map<String, ResolvedToken> resolvedTokens =
+            (Map<String, ResolvedToken>) request.getAttribute(RESOLVED_TOKENS_ATTRIBUTE);
+        if (resolvedTokens == null) {
+            // The request may be rendered by several threads.
+            resolvedTokens = new ConcurrentHashMap<>();
+            request.setAttribute(RESOLVED_TOKENS_ATTRIBUTE, resolvedTokens);
+        }
+        return resolvedTokens;
+    }
+
+    /**
+     * A token resolved during the current request.
+     */
+    private static final class ResolvedToken
+    {
+        private final Optional<String> token;
+
+        private final long resolvedAt = System.currentTimeMillis();
+
+        ResolvedToken(Optional<String> token)
+        {
+            this.token = token;
+        }
+
+        boolean isRecent()
+        {
+            return System.currentTimeMillis() - resolvedAt < RESOLVED_TOKEN_LIFESPAN;
         }
     }
 
@@ -217,49 +225,7 @@ public class JIRAOAuthAuthenticator implements JIRAAuthenticator
         if (isAuthenticatingRequest()) {
             return isInline ? new FormatBlock() : new GroupBlock();
         }
-        String linkTranslationKey;
-        String descriptionTranslationKey;
-        boolean isUserLoggedIn = contextProvider.get().getUserReference() != null;
-        if (mustBeAuthenticated) {
-            descriptionTranslationKey =
-                isUserLoggedIn ? "com.xwiki.jirapro.oauth.mustbeauthenticated.jira.description"
-                    : "com.xwiki.jirapro.oauth.mustbeauthenticated.xwiki.description";
-            linkTranslationKey =
-                isUserLoggedIn ? "com.xwiki.jirapro.oauth.mustbeauthenticated.jira.link"
-                    : "com.xwiki.jirapro.oauth.mustbeauthenticated.xwiki.link";
-        } else {
-            descriptionTranslationKey =
-                isUserLoggedIn ? "com.xwiki.jirapro.oauth.mightneedtoauthenticate.jira.description"
-                    : "com.xwiki.jirapro.oauth.mightneedtoauthenticate.xwiki.description";
-            linkTranslationKey =
-                isUserLoggedIn ? "com.xwiki.jirapro.oauth.mightneedtoauthenticate.jira.link"
-                    : "com.xwiki.jirapro.oauth.mightneedtoauthenticate.xwiki.link";
-        }
-        String configId = getConfigurationName();
-        ResourceReference reference = isUserLoggedIn
-            ? new ResourceReference("XWiki.JIRAPro.OAuth.JiraAuthorize", ResourceType.DOCUMENT)
-            : new ResourceReference("/xwiki/bin/login/XWiki/XWikiLogin?xredirect="
-            + URLEncoder.encode(redirectUrl, StandardCharsets.UTF_8), ResourceType.PATH);
-        if (isUserLoggedIn) {
-            reference.setParameter(QUERY_STRING,
-                "configId=" + URLEncoder.encode(configId, StandardCharsets.UTF_8)
-                    + "&redirectUrl=" + URLEncoder.encode(redirectUrl,
-                    StandardCharsets.UTF_8));
-        }
-        LinkBlock link = new LinkBlock(
-            localization.getTranslation(linkTranslationKey).render().getChildren(),
-            reference,
-            false);
-        List<Block> blocks = List.of(
-            localization.getTranslation(descriptionTranslationKey).render(),
-            new SpaceBlock(),
-            link,
-            new WordBlock("."));
-        if (isInline) {
-            return new FormatBlock(blocks, Format.NONE, Map.of(BLOCK_PARAM_CLASS,
-                BLOCK_PARAM_CLASS_VALUE_WARNINGMESSAGE));
-        } else {
-            return new GroupBlock(blocks, Map.of(BLOCK_PARAM_CLASS, BLOCK_PARAM_CLASS_VALUE_WARNINGMESSAGE));
-        }
+        return warningBlockProvider.getWarningBlock(getConfigurationName(), mustBeAuthenticated, isInline,
+            redirectUrl);
     }
 }
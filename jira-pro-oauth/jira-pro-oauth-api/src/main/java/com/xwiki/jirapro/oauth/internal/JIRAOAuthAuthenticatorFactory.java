@@ -19,20 +19,35 @@
  */
 package com.xwiki.jirapro.oauth.internal;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.component.manager.ComponentLookupException;
-import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 import org.xwiki.contrib.jira.config.JIRAAuthenticator;
 import org.xwiki.contrib.jira.config.JIRAAuthenticatorFactory;
 import org.xwiki.contrib.jira.config.internal.JIRAAuthenticatorException;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -41,6 +56,9 @@ import com.xpn.xwiki.objects.BaseObject;
 
 /**
  * The JIRA Authenticator factory for OAuth.
+ * <p>
+ * The authenticators configured in the OAuth configuration document of each wiki are created once and shared until
+ * the document is modified.
  *
  * @version $Id$
  * @since 1.0.0
@@ -48,7 +66,7 @@ import com.xpn.xwiki.objects.BaseObject;
 @Singleton
 @Component
 @Named(JIRAOAuthAuthenticator.HINT)
-public class JIRAOAuthAuthenticatorFactory implements JIRAAuthenticatorFactory
+public class JIRAOAuthAuthenticatorFactory implements JIRAAuthenticatorFactory, Initializable, Disposable
 {
     private static final List<String> JIRA_PRO_OAUTH_SPACE = List.of("XWiki", "JIRAPro", "OAuth");
 
@@ -67,14 +85,79 @@ public class JIRAOAuthAuthenticatorFactory implements JIRAAuthenticatorFactory
         new LocalDocumentReference(JIRA_PRO_OAUTH_SPACE, "ConfigClass");
 
     @Inject
-    @Named("context")
-    private Provider<ComponentManager> componentManagerProvider;
+    private Provider<XWikiContext> contextProvider;
 
     @Inject
-    private Provider<XWikiContext> contextProvider;
+    private JIRAOAuthTokenManager tokenManager;
+
+    @Inject
+    private JIRAOAuthWarningBlockProvider warningBlockProvider;
+
+    @Inject
+    private JIRAOAuthLicenseChecker licenseChecker;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    /**
+     * The configured authenticators of each wiki, by server id.
+     */
+    private final Map<String, Map<String, JIRAOAuthAuthenticator>> authenticators = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each configuration change, so that a snapshot loaded concurrently with a change is not kept.
+     */
+    private final AtomicLong configurationVersion = new AtomicLong();
+
+    private final EventListener configurationListener = new AbstractEventListener("JIRAOAuthConfigurationListener",
+        new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent())
+    {
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            DocumentReference documentReference = ((XWikiDocument) source).getDocumentReference();
+            if (OAUTH_CONFIG_REFERENCE.equals(new LocalDocumentReference(documentReference))) {
+                configurationVersion.incrementAndGet();
+                authenticators.remove(documentReference.getWikiReference().getName());
+            }
+        }
+    };
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        observationManager.addListener(configurationListener);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        observationManager.removeListener(configurationListener.getName());
+    }
 
     @Override
     public JIRAAuthenticator get(String serverId) throws JIRAAuthenticatorException
+    {
+        String wikiId = contextProvider.get().getWikiId();
+        Map<String, JIRAOAuthAuthenticator> wikiAuthenticators = authenticators.get(wikiId);
+        if (wikiAuthenticators == null) {
+            long version = configurationVersion.get();
+            wikiAuthenticators = loadAuthenticators();
+            // Put first, then check: a change notified in between is caught either by this check or by the listener.
+            authenticators.put(wikiId, wikiAuthenticators);
+            if (version != configurationVersion.get()) {
+                authenticators.remove(wikiId, wikiAuthenticators);
+            }
+        }
+
+        JIRAOAuthAuthenticator authenticator = wikiAuthenticators.get(serverId);
+        if (authenticator == null) {
+            throw new JIRAAuthenticatorException("Can't find OAuth config for server ID: " + serverId);
+        }
+        return authenticator;
+    }
+
+    private Map<String, JIRAOAuthAuthenticator> loadAuthenticators() throws JIRAAuthenticatorException
     {
         XWikiContext context = contextProvider.get();
         XWikiDocument doc;
@@ -84,21 +167,22 @@ public class JIRAOAuthAuthenticatorFactory implements JIRAAuthenticatorFactory
         } catch (XWikiException e) {
             throw new JIRAAuthenticatorException("Can't get JIRA OAuth configuration document", e);
         }
-        BaseObject authObj = doc.getXObject(OAUTH_DATA_CLASS_REFERENCE, CONFIG_ID_FIELD, serverId, false);
-        if (authObj != null) {
-            int requireAuthentication = authObj.getIntValue("requireAuthentication");
-            String configName = authObj.getStringValue("oidcConfigName");
-            JIRAOAuthAuthenticator authenticator;
-            try {
-                authenticator =
-                    componentManagerProvider.get().getInstance(JIRAAuthenticator.class, JIRAOAuthAuthenticator.HINT);
-            } catch (ComponentLookupException e) {
-                throw new JIRAAuthenticatorException("Can't get OAuthAuthenticator component", e);
+
+        Map<String, JIRAOAuthAuthenticator> wikiAuthenticators = new HashMap<>();
+        for (BaseObject authObj : doc.getXObjects(OAUTH_DATA_CLASS_REFERENCE)) {
+            // The first object of a server wins, like when looking up the object by server id.
+            if (authObj != null && !wikiAuthenticators.containsKey(authObj.getStringValue(CONFIG_ID_FIELD))) {
+                wikiAuthenticators.put(authObj.getStringValue(CONFIG_ID_FIELD), createAuthenticator(authObj));
             }
-            authenticator.configure(configName, requireAuthentication == 1);
-            return authenticator;
-        } else {
-            throw new JIRAAuthenticatorException("Can't find OAuth config for server ID: " + serverId);
         }
+        return Collections.unmodifiableMap(wikiAuthenticators);
+    }
+
+    private JIRAOAuthAuthenticator createAuthenticator(BaseObject authObj)
+    {
+        int requireAuthentication = authObj.getIntValue("requireAuthentication");
+        String configName = authObj.getStringValue("oidcConfigName");
+        return new JIRAOAuthAuthenticator(configName, requireAuthentication == 1, contextProvider, tokenManager,
+            warningBlockProvider, licenseChecker);
     }
 }
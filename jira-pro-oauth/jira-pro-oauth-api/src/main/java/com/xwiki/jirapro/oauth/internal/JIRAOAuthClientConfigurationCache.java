@@ -0,0 +1,143 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.oauth.internal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.contrib.oidc.auth.store.OIDCClientConfiguration;
+import org.xwiki.contrib.oidc.auth.store.OIDCClientConfigurationStore;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Keeps the OIDC client configurations used to get the OAuth tokens in memory, until a client configuration of their
+ * wiki is modified.
+ *
+ * @version $Id$
+ * @since 1.0.0
+ */
+@Component(roles = JIRAOAuthClientConfigurationCache.class)
+@Singleton
+public class JIRAOAuthClientConfigurationCache implements Initializable, Disposable
+{
+    private static final LocalDocumentReference CLIENT_CONFIGURATION_CLASS_REFERENCE =
+        new LocalDocumentReference(List.of("XWiki", "OIDC"), "ClientConfigurationClass");
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private OIDCClientConfigurationStore clientConfigurationStore;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    /**
+     * The client configurations of each wiki, by name.
+     */
+    private final Map<String, Map<String, OIDCClientConfiguration>> configurations = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each configuration change, so that a configuration loaded concurrently with a change is not kept.
+     */
+    private final AtomicLong configurationVersion = new AtomicLong();
+
+    private final EventListener configurationListener = new AbstractEventListener(
+        "JIRAOAuthClientConfigurationListener", new DocumentCreatedEvent(), new DocumentUpdatedEvent(),
+        new DocumentDeletedEvent())
+    {
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            XWikiDocument document = (XWikiDocument) source;
+            if (hasClientConfiguration(document) || hasClientConfiguration(document.getOriginalDocument())) {
+                configurationVersion.incrementAndGet();
+                configurations.remove(document.getDocumentReference().getWikiReference().getName());
+            }
+        }
+    };
+
+    private static boolean hasClientConfiguration(XWikiDocument document)
+    {
+        return document != null && document.getXObject(CLIENT_CONFIGURATION_CLASS_REFERENCE) != null;
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        observationManager.addListener(configurationListener);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        observationManager.removeListener(configurationListener.getName());
+    }
+
+    /**
+     * Get an OIDC client configuration of the current wiki.
+     *
+     * @param name the name of the client configuration
+     * @return the client configuration, or {@code null} if it doesn't exist
+     * @throws Exception if the client configuration can't be loaded
+     */
+    public OIDCClientConfiguration getConfiguration(String name) throws Exception
+    {
+        String wikiId = contextProvider.get().getWikiId();
+        Map<String, OIDCClientConfiguration> wikiConfigurations =
+            configurations.computeIfAbsent(wikiId, key -> new ConcurrentHashMap<>());
+        OIDCClientConfiguration configuration = wikiConfigurations.get(name);
+        if (configuration == null) {
+            long version = configurationVersion.get();
+            configuration = clientConfigurationStore.getOIDCClientConfiguration(name);
+            // Missing configurations are not kept, they are usually being created.
+            if (configuration != null) {
+                // Put first, then check: a change notified in between is caught either by this check or by the
+                // listener.
+                wikiConfigurations.put(name, configuration);
+                if (version != configurationVersion.get()) {
+                    wikiConfigurations.remove(name, configuration);
+                }
+            }
+        }
+        return configuration;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.oauth.internal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xwiki.licensing.Licensor;
+
+/**
+ * Tells if JIRA Pro OAuth is licensed on the current wiki. The decision of each wiki is kept for a short time, since
+ * it is needed by every JIRA macro and every request sent to JIRA.
+ *
+ * @version $Id$
+ * @since 1.0.0
+ */
+@Component(roles = JIRAOAuthLicenseChecker.class)
+@Singleton
+public class JIRAOAuthLicenseChecker
+{
+    private static final LocalDocumentReference LICENSED_DOCUMENT =
+        new LocalDocumentReference(List.of("XWiki", "JIRAPro", "OAuth"), "WebHome");
+
+    /**
+     * The number of milliseconds a licence decision is kept. The licensor doesn't notify licence changes, so an
+     * updated licence is taken into account after this delay.
+     */
+    private static final long DECISION_LIFESPAN = 60_000;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private Licensor licensor;
+
+    private final Map<String, Decision> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * A licence decision and the time until which it can be used.
+     */
+    private static final class Decision
+    {
+        private final boolean licensed;
+
+        private final long validUntil = System.currentTimeMillis() + DECISION_LIFESPAN;
+
+        Decision(boolean licensed)
+        {
+            this.licensed = licensed;
+        }
+    }
+
+    /**
+     * @return true if JIRA Pro OAuth is licensed on the current wiki
+     */
+    public boolean hasLicensure()
+    {
+        String wikiId = contextProvider.get().getWikiId();
+        Decision decision = decisions.get(wikiId);
+        if (decision == null || System.currentTimeMillis() >= decision.validUntil) {
+            decision = new Decision(
+                licensor.hasLicensure(new DocumentReference(LICENSED_DOCUMENT, new WikiReference(wikiId))));
+            decisions.put(wikiId, decision);
+        }
+        return decision.licensed;
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.oauth.internal;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.contrib.oidc.OAuth2ClientManager;
+import org.xwiki.contrib.oidc.OAuth2Token;
+import org.xwiki.contrib.oidc.OAuth2TokenStore;
+import org.xwiki.contrib.oidc.auth.store.OIDCClientConfiguration;
+import org.xwiki.job.Job;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Provides the OAuth access tokens of the current user. The tokens are kept in memory until they get close to their
+ * expiry, so that the token store and the renewal machinery are only used when a token is missing or about to expire.
+ * <p>
+ * The tokens of the users that used them recently are renewed in the background shortly before they expire, so that
+ * request threads almost never have to wait for the identity provider.
+ * <p>
+ * Concurrent renewals of the same token are coalesced: one thread renews it and the others wait and reuse its result,
+ * without blocking the renewals of other tokens.
+ * A token that is about to expire but can still be used is returned right away while it gets renewed in the
+ * background; requests only wait, for a bounded time, when there is no usable token at all. When a renewal doesn't
+ * produce a new token, e.g. because the identity provider is unreachable, the current token keeps being used until it
+ * actually expires and the renewal is retried periodically.
+ *
+ * @version $Id$
+ * @since 1.0.0
+ */
+@Component(roles = JIRAOAuthTokenManager.class)
+@Singleton
+public class JIRAOAuthTokenManager implements Initializable, Disposable
+{
+    private static final String CACHE_ID = "jirapro.oauth.tokens";
+
+    private static final int CACHE_SIZE = 10000;
+
+    /**
+     * A cached token is not used anymore this number of milliseconds before its expiry, to leave time to use it.
+     */
+    private static final long EXPIRY_MARGIN = 60_000;
+
+    /**
+     * The number of milliseconds a token is cached when its expiry is unknown.
+     */
+    private static final long DEFAULT_TOKEN_LIFESPAN = 60_000;
+
+    /**
+     * The number of milliseconds during which a user is remembered as having no token. This is long enough for the
+     * macros of a page to reuse the lookup done for the page, and short enough to pick up a new authorization quickly.
+     */
+    private static final long MISSING_TOKEN_LIFESPAN = 5_000;
+
+    /**
+     * A token that is about to expire is still returned, while being renewed, until this number of milliseconds before
+     * its expiry.
+     */
+    private static final long USABLE_MARGIN = 5_000;
+
+    /**
+     * The number of seconds a request waits for a token renewal.
+     */
+    private static final long RENEWAL_TIMEOUT = 10;
+
+    /**
+     * The minimum number of milliseconds between two background renewals of a token that is about to expire, when the
+     * previous renewal didn't produce a new token.
+     */
+    private static final long RENEWAL_RETRY_DELAY = 10_000;
+
+    /**
+     * The number of milliseconds before the end of its validity at which a token is renewed in the background.
+     */
+    private static final long REFRESH_LEAD = 60_000;
+
+    /**
+     * Tokens that were not used during this number of milliseconds are left to expire instead of being renewed.
+     */
+    private static final long ACTIVITY_WINDOW = 30 * 60_000;
+
+    /**
+     * The number of threads renewing tokens in the background.
+     */
+    private static final int BACKGROUND_THREADS = 4;
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private JIRAOAuthClientConfigurationCache clientConfigurationCache;
+
+    @Inject
+    private OAuth2ClientManager oAuth2ClientManager;
+
+    @Inject
+    private OAuth2TokenStore tokenStore;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private Logger logger;
+
+    private Cache<CachedToken> cache;
+
+    private ScheduledExecutorService refreshScheduler;
+
+    /**
+     * The renewals in progress, by token key.
+     */
+    private final Map<String, CompletableFuture<Optional<String>>> renewals = new ConcurrentHashMap<>();
+
+    /**
+     * An access token and the time until which it can be used. The access token is {@code null} when the user has no
+     * token.
+     */
+    private static final class CachedToken
+    {
+        private final String accessToken;
+
+        private final long validUntil;
+
+        private final long expiresAt;
+
+        private final long usableUntil;
+
+        private final boolean expiryKnown;
+
+        /**
+         * The time before which no new background renewal should be started for this token.
+         */
+        private final AtomicLong renewalNotBefore = new AtomicLong();
+
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        CachedToken()
+        {
+            this.accessToken = null;
+            this.expiresAt = 0;
+            this.expiryKnown = false;
+            this.validUntil = System.currentTimeMillis() + MISSING_TOKEN_LIFESPAN;
+            this.usableUntil = validUntil;
+        }
+
+        CachedToken(OAuth2Token token)
+        {
+            this.accessToken = token.getAccessToken();
+            this.expiresAt = token.getExpiresAt();
+            this.expiryKnown = expiresAt > 0;
+            this.validUntil =
+                expiryKnown ? expiresAt - EXPIRY_MARGIN : System.currentTimeMillis() + DEFAULT_TOKEN_LIFESPAN;
+            this.usableUntil = expiryKnown ? expiresAt - USABLE_MARGIN : validUntil;
+        }
+
+        boolean isValid()
+        {
+            return System.currentTimeMillis() < validUntil;
+        }
+
+        boolean isUsable()
+        {
+            return System.currentTimeMillis() < usableUntil;
+        }
+
+        /**
+         * @return true if the token didn't reach its actual expiry
+         */
+        boolean isUnexpired()
+        {
+            return expiryKnown ? System.currentTimeMillis() < expiresAt : isUsable();
+        }
+
+        /**
+         * @return true if a renewal was attempted recently and should not be attempted again yet
+         */
+        boolean isRenewalThrottled()
+        {
+            return System.currentTimeMillis() < renewalNotBefore.get();
+        }
+
+        void throttleRenewal()
+        {
+            renewalNotBefore.set(System.currentTimeMillis() + RENEWAL_RETRY_DELAY);
+        }
+
+        boolean isSameAs(OAuth2Token token)
+        {
+            return token.getAccessToken().equals(accessToken) && expiresAt == token.getExpiresAt();
+        }
+
+        /**
+         * @return true if the caller should start a background renewal, false if one was started recently
+         */
+        boolean tryStartRenewal()
+        {
+            long now = System.currentTimeMillis();
+            long notBefore = renewalNotBefore.get();
+            return now >= notBefore && renewalNotBefore.compareAndSet(notBefore, now + RENEWAL_RETRY_DELAY);
+        }
+    }
+
+    /**
+     * Identifies the token of a user for an OIDC configuration.
+     */
+    private static final class TokenKey
+    {
+        private final String wikiId;
+
+        private final DocumentReference userReference;
+
+        private final String configurationName;
+
+        TokenKey(String wikiId, DocumentReference userReference, String configurationName)
+        {
+            this.wikiId = wikiId;
+            this.userReference = userReference;
+            this.configurationName = configurationName;
+        }
+
+        @Override
+        public String toString()
+        {
+            return wikiId + ':' + userReference + ':' + configurationName;
+        }
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache = cacheManager.createNewCache(new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the OAuth token cache.", e);
+        }
+
+        this.refreshScheduler = Executors.newScheduledThreadPool(BACKGROUND_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "JIRA Pro OAuth token refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        refreshScheduler.shutdownNow();
+        cache.dispose();
+    }
+
+    /**
+     * Get the access token of the current user for the given OIDC configuration, renewing it if needed.
+     *
+     * @param configurationName the OIDC configuration name
+     * @return the access token, or an empty optional if the user didn't authorize the access yet
+     */
+    public Optional<String> getToken(String configurationName)
+    {
+        XWikiContext xcontext = contextProvider.get();
+        TokenKey key = new TokenKey(xcontext.getWikiId(), xcontext.getUserReference(), configurationName);
+        CachedToken cachedToken = cache.get(key.toString());
+        if (cachedToken != null && cachedToken.isUsable()) {
+            cachedToken.lastAccess = System.currentTimeMillis();
+            if (!cachedToken.isValid() && cachedToken.tryStartRenewal()) {
+                refreshScheduler.execute(() -> refresh(key, cachedToken));
+            }
+            return Optional.ofNullable(cachedToken.accessToken);
+        }
+        if (cachedToken != null && cachedToken.accessToken != null && cachedToken.isUnexpired()
+            && cachedToken.isRenewalThrottled())
+        {
+            // The latest renewal didn't produce a new token and is retried in the background, don't wait for it.
+            cachedToken.lastAccess = System.currentTimeMillis();
+            return Optional.of(cachedToken.accessToken);
+        }
+
+        return loadToken(key, null);
+    }
+
+    /**
+     * Start loading the token of the current user for the given OIDC configuration in the background, unless a usable
+     * token is already available. A request that needs the token while it's being loaded waits for that load instead
+     * of starting its own.
+     *
+     * @param configurationName the OIDC configuration name
+     */
+    public void prefetchToken(String configurationName)
+    {
+        XWikiContext xcontext = contextProvider.get();
+        TokenKey key = new TokenKey(xcontext.getWikiId(), xcontext.getUserReference(), configurationName);
+        CachedToken cachedToken = cache.get(key.toString());
+        if (cachedToken == null || !cachedToken.isUsable()) {
+            refreshScheduler.execute(() -> loadTokenInBackground(key, cachedToken));
+        }
+    }
+
+    /**
+     * @param key identifies the token to load
+     * @param replacedToken the cached token that is being renewed in the background, {@code null} when a request
+     *     needs a valid token
+     */
+    private Optional<String> loadToken(TokenKey key, CachedToken replacedToken)
+    {
+        String cacheKey = key.toString();
+        CompletableFuture<Optional<String>> renewal = new CompletableFuture<>();
+        CompletableFuture<Optional<String>> runningRenewal = renewals.putIfAbsent(cacheKey, renewal);
+        if (runningRenewal != null) {
+            return awaitRenewal(runningRenewal);
+        }
+
+        Optional<String> result = Optional.empty();
+        try {
+            // Another thread may have renewed the token just before.
+            CachedToken cachedToken = cache.get(cacheKey);
+            if (cachedToken != null && cachedToken.isValid() && cachedToken != replacedToken) {
+                result = Optional.ofNullable(cachedToken.accessToken);
+            } else {
+                result = renewToken(key);
+            }
+            return result;
+        } finally {
+            renewal.complete(result);
+            renewals.remove(cacheKey, renewal);
+        }
+    }
+
+    private Optional<String> awaitRenewal(CompletableFuture<Optional<String>> renewal)
+    {
+        try {
+            return renewal.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            // Renewals always complete normally.
+            return Optional.empty();
+        }
+    }
+
+    private Optional<String> renewToken(TokenKey key)
+    {
+        String cacheKey = key.toString();
+        try {
+            // Make sure that the token is up to date
+            OIDCClientConfiguration configuration =
+                clientConfigurationCache.getConfiguration(key.configurationName);
+            Job tokenRenewalJob = oAuth2ClientManager.renew(configuration);
+            if (tokenRenewalJob != null) {
+                try {
+                    tokenRenewalJob.join(RENEWAL_TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    logger.error("Can't get renewal job", e);
+                    Thread.currentThread().interrupt();
+                    return Optional.empty();
+                }
+            }
+
+            OAuth2Token token = tokenStore.getToken(configuration);
+            if (token != null) {
+                CachedToken cachedToken = cache.get(cacheKey);
+                if (cachedToken == null || !cachedToken.isSameAs(token)) {
+                    cachedToken = new CachedToken(token);
+                    cache.set(cacheKey, cachedToken);
+                    scheduleRefresh(key, cachedToken);
+                } else if (!cachedToken.isValid()) {
+                    // The renewal was a no-op, failed or timed out: keep using the token and try again later.
+                    scheduleRetry(key, cachedToken);
+                }
+                // The store may still hold an expired token.
+                return cachedToken.isUnexpired() ? Optional.of(cachedToken.accessToken) : Optional.empty();
+            } else {
+                // Remember it briefly, so that the other macros of the page don't look it up again.
+                cache.set(cacheKey, new CachedToken());
+                return Optional.empty();
+            }
+        } catch (Exception e) {
+            logger.error("Can't get OAuth token", e);
+            return Optional.empty();
+        }
+    }
+
+    private void scheduleRefresh(TokenKey key, CachedToken cachedToken)
+    {
+        if (!cachedToken.expiryKnown) {
+            return;
+        }
+        long delay = cachedToken.validUntil - REFRESH_LEAD - System.currentTimeMillis();
+        if (delay > 0) {
+            refreshScheduler.schedule(() -> refresh(key, cachedToken), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduleRetry(TokenKey key, CachedToken cachedToken)
+    {
+        cachedToken.throttleRenewal();
+        if (cachedToken.expiryKnown && cachedToken.isUnexpired()) {
+            refreshScheduler.schedule(() -> refresh(key, cachedToken), RENEWAL_RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refresh(TokenKey key, CachedToken scheduledToken)
+    {
+        // Only renew the token that was scheduled, if it is still in use.
+        if (cache.get(key.toString()) != scheduledToken
+            || System.currentTimeMillis() - scheduledToken.lastAccess > ACTIVITY_WINDOW)
+        {
+            return;
+        }
+
+        loadTokenInBackground(key, scheduledToken);
+    }
+
+    private void loadTokenInBackground(TokenKey key, CachedToken replacedToken)
+    {
+        try {
+            executionContextManager.initialize(new ExecutionContext());
+            XWikiContext xcontext = contextProvider.get();
+            xcontext.setWikiId(key.wikiId);
+            xcontext.setUserReference(key.userReference);
+            loadToken(key, replacedToken);
+        } catch (ExecutionContextException e) {
+            logger.warn("Failed to initialize the context for renewing the OAuth token of [{}]: {}",
+                key.userReference, e.getMessage());
+        } finally {
+            execution.removeContext();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.oauth.internal;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.bridge.event.ActionExecutingEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.jira.config.JIRAAuthenticator;
+import org.xwiki.contrib.jira.config.JIRAConfiguration;
+import org.xwiki.contrib.jira.config.JIRAServer;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Starts loading, before a document is rendered, the OAuth tokens needed by the JIRA macros of the document. The
+ * tokens of the different JIRA servers are then loaded in parallel, instead of one after the other when each macro is
+ * executed.
+ *
+ * @version $Id$
+ * @since 1.0.0
+ */
+@Component
+@Named(JIRAOAuthTokenPrefetchListener.NAME)
+@Singleton
+public class JIRAOAuthTokenPrefetchListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "JIRAOAuthTokenPrefetchListener";
+
+    private static final String JIRA_MACRO_PREFIX = "jira";
+
+    private static final String SERVER_ID_PARAMETER = "id";
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private JIRAConfiguration jiraConfiguration;
+
+    @Inject
+    private JIRAOAuthTokenManager tokenManager;
+
+    @Inject
+    private JIRAOAuthLicenseChecker licenseChecker;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Default constructor.
+     */
+    public JIRAOAuthTokenPrefetchListener()
+    {
+        super(NAME, new ActionExecutingEvent("view"));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiContext xcontext = contextProvider.get();
+        XWikiDocument document = xcontext.getDoc();
+        if (document == null || xcontext.getUserReference() == null || !licenseChecker.hasLicensure()) {
+            return;
+        }
+
+        try {
+            for (String configurationName : getConfigurationNames(document.getXDOM())) {
+                tokenManager.prefetchToken(configurationName);
+            }
+        } catch (Exception e) {
+            // Prefetching is only an optimization, the macros load the tokens they need anyway.
+            logger.debug("Failed to prefetch the OAuth tokens of [{}]: {}", document.getDocumentReference(),
+                e.getMessage());
+        }
+    }
+
+    /**
+     * @return the OIDC configurations of the JIRA servers used by the JIRA macros of the given content
+     */
+    private Set<String> getConfigurationNames(XDOM xdom)
+    {
+        Set<String> configurationNames = new LinkedHashSet<>();
+        if (xdom == null) {
+            return configurationNames;
+        }
+
+        Map<String, JIRAServer> jiraServers = jiraConfiguration.getJIRAServers();
+        List<MacroBlock> macros = xdom.getBlocks(new ClassBlockMatcher(MacroBlock.class), Block.Axes.DESCENDANT);
+        for (MacroBlock macro : macros) {
+            String serverId = macro.getParameter(SERVER_ID_PARAMETER);
+            if (macro.getId().startsWith(JIRA_MACRO_PREFIX) && serverId != null) {
+                JIRAServer jiraServer = jiraServers.get(serverId);
+                JIRAAuthenticator authenticator =
+                    jiraServer != null ? jiraServer.getJiraAuthenticator().orElse(null) : null;
+                if (authenticator instanceof JIRAOAuthAuthenticator) {
+                    configurationNames.add(((JIRAOAuthAuthenticator) authenticator).getConfigurationName());
+                }
+            }
+        }
+        return configurationNames;
+    }
+}
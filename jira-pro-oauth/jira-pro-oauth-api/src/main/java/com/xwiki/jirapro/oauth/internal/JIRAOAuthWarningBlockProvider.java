@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xwiki.jirapro.oauth.internal;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.localization.ContextualLocalizationManager;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.FormatBlock;
+import org.xwiki.rendering.block.GroupBlock;
+import org.xwiki.rendering.block.LinkBlock;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Builds the warning shown to the users that need to authenticate before seeing the JIRA content.
+ * <p>
+ * The translated parts of the warning are rendered once per wiki, locale and kind of warning. Each call only clones
+ * them and adds the link, which depends on the OIDC configuration and the redirect URL.
+ *
+ * @version $Id$
+ * @since 1.0.0
+ */
+@Component(roles = JIRAOAuthWarningBlockProvider.class)
+@Singleton
+public class JIRAOAuthWarningBlockProvider implements Initializable, Disposable
+{
+    private static final String BLOCK_PARAM_CLASS = "class";
+
+    private static final String BLOCK_PARAM_CLASS_VALUE_WARNINGMESSAGE = "box warningmessage";
+
+    private static final String QUERY_STRING = "queryString";
+
+    private static final String CACHE_ID = "jirapro.oauth.warningBlocks";
+
+    private static final int CACHE_SIZE = 1000;
+
+    /**
+     * The number of seconds a rendered warning is kept, so that translation changes are eventually taken into account.
+     */
+    private static final int CACHE_LIFESPAN = 600;
+
+    /**
+     * Stands for the link until the actual one is known.
+     */
+    private static final ResourceReference PLACEHOLDER_REFERENCE = new ResourceReference("", ResourceType.PATH);
+
+    @Inject
+    private Provider<XWikiContext> contextProvider;
+
+    @Inject
+    private ContextualLocalizationManager localization;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<Block> cache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        LRUCacheConfiguration cacheConfiguration = new LRUCacheConfiguration(CACHE_ID, CACHE_SIZE);
+        cacheConfiguration.getLRUEvictionConfiguration().setLifespan(CACHE_LIFESPAN);
+        try {
+            this.cache = cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the OAuth warning block cache.", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        cache.dispose();
+    }
+
+    /**
+     * Provide the block to show to the current user when JIRA can't be accessed on their behalf.
+     *
+     * @param configurationName the OIDC configuration the user has to authorize
+     * @param mustBeAuthenticated must be true, if in the UI the user must be authenticated, otherwise false when
+     *     the feature are still usable in limited mode.
+     * @param isInline if the content should be placed inline.
+     * @param redirectUrl the URL to redirect after the authentication was done.
+     * @return the warning block
+     */
+    public Block getWarningBlock(String configurationName, boolean mustBeAuthenticated, boolean isInline,
+        String redirectUrl)
+    {
+        XWikiContext xcontext = contextProvider.get();
+        boolean isUserLoggedIn = xcontext.getUserReference() != null;
+        String cacheKey = String.format("%s:%s:%s:%s:%s", xcontext.getWikiId(), xcontext.getLocale(),
+            mustBeAuthenticated, isUserLoggedIn, isInline);
+        Block template = cache.get(cacheKey);
+        if (template == null) {
+            template = createTemplate(mustBeAuthenticated, isUserLoggedIn, isInline);
+            cache.set(cacheKey, template);
+        }
+
+        Block warning = template.clone();
+        LinkBlock placeholder = warning.getFirstBlock(new ClassBlockMatcher(LinkBlock.class), Block.Axes.DESCENDANT);
+        placeholder.getParent().replaceChild(new LinkBlock(placeholder.getChildren(),
+            getLinkReference(configurationName, isUserLoggedIn, redirectUrl), false), placeholder);
+        return warning;
+    }
+
+    private Block createTemplate(boolean mustBeAuthenticated, boolean isUserLoggedIn, boolean isInline)
+    {
+        String linkTranslationKey;
+        String descriptionTranslationKey;
+        if (mustBeAuthenticated) {
+            descriptionTranslationKey =
+                isUserLoggedIn ? "com.xwiki.jirapro.oauth.mustbeauthenticated.jira.description"
+                    : "com.xwiki.jirapro.oauth.mustbeauthenticated.xwiki.description";
+            linkTranslationKey =
+                isUserLoggedIn ? "com.xwiki.jirapro.oauth.mustbeauthenticated.jira.link"
+                    : "com.xwiki.jirapro.oauth.mustbeauthenticated.xwiki.link";
+        } else {
+            descriptionTranslationKey =
+                isUserLoggedIn ? "com.xwiki.jirapro.oauth.mightneedtoauthenticate.jira.description"
+                    : "com.xwiki.jirapro.oauth.mightneedtoauthenticate.xwiki.description";
+            linkTranslationKey =
+                isUserLoggedIn ? "com.xwiki.jirapro.oauth.mightneedtoauthenticate.jira.link"
+                    : "com.xwiki.jirapro.oauth.mightneedtoauthenticate.xwiki.link";
+        }
+        LinkBlock link = new LinkBlock(
+            localization.getTranslation(linkTranslationKey).render().getChildren(),
+            PLACEHOLDER_REFERENCE,
+            false);
+        List<Block> blocks = List.of(
+            localization.getTranslation(descriptionTranslationKey).render(),
+            new SpaceBlock(),
+            link,
+            new WordBlock("."));
+        if (isInline) {
+            return new FormatBlock(blocks, Format.NONE, Map.of(BLOCK_PARAM_CLASS,
+                BLOCK_PARAM_CLASS_VALUE_WARNINGMESSAGE));
+        } else {
+            return new GroupBlock(blocks, Map.of(BLOCK_PARAM_CLASS, BLOCK_PARAM_CLASS_VALUE_WARNINGMESSAGE));
+        }
+    }
+
+    private ResourceReference getLinkReference(String configurationName, boolean isUserLoggedIn, String redirectUrl)
+    {
+        ResourceReference reference = isUserLoggedIn
+            ? new ResourceReference("XWiki.JIRAPro.OAuth.JiraAuthorize", ResourceType.DOCUMENT)
+            : new ResourceReference("/xwiki/bin/login/XWiki/XWikiLogin?xredirect="
+            + URLEncoder.encode(redirectUrl, StandardCharsets.UTF_8), ResourceType.PATH);
+        if (isUserLoggedIn) {
+            reference.setParameter(QUERY_STRING,
+                "configId=" + URLEncoder.encode(configurationName, StandardCharsets.UTF_8)
+                    + "&redirectUrl=" + URLEncoder.encode(redirectUrl,
+                    StandardCharsets.UTF_8));
+        }
+        return reference;
+    }
+}
@@ -27,17 +27,26 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 
 import org.xwiki.contrib.jira.config.JIRAServer;
-import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.FormatBlock;
+import org.xwiki.rendering.block.GroupBlock;
 import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.Format;
 import org.xwiki.rendering.transformation.MacroTransformationContext;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xwiki.jirapro.oauth.internal.JIRAOAuthAuthenticator;
-import com.xwiki.licensing.Licensor;
+import com.xwiki.jirapro.oauth.internal.JIRAOAuthLicenseChecker;
 
 /**
  * Macro transformation to add a message in case of the user is not logged in JIRA.
+ * <p>
+ * The message is shown only once per rendered content for each OIDC configuration: the following JIRA macros of the
+ * same content that need the same authentication don't repeat it, and leave an empty placeholder instead.
+ * <p>
+ * The transformation receives the blocks the JIRA macro produced after querying Jira, so its output is not cached:
+ * that would not save any Jira request. Caching the query results is up to the JIRA macro.
  *
  * @param <P> the type of the macro parameter.
  * @version $Id$
@@ -45,11 +54,20 @@ import com.xwiki.licensing.Licensor;
  */
 public class JIRAMacroTransformation<P> implements org.xwiki.contrib.jira.macro.JIRAMacroTransformation<P>
 {
+    /**
+     * The prefix of the XDOM parameters marking the OIDC configurations already notified in the rendered content.
+     */
+    private static final String NOTIFIED_PARAMETER_PREFIX = "jirapro.oauth.notified.";
+
+    private static final String PLACEHOLDER_CLASS = "class";
+
+    private static final String PLACEHOLDER_CLASS_VALUE = "jirapro-oauth-notified";
+
     @Inject
     private Provider<XWikiContext> contextProvider;
 
     @Inject
-    private Licensor licensor;
+    private JIRAOAuthLicenseChecker licenseChecker;
 
     @Override
     public List<Block> transform(List<Block> blocks, P parameters, MacroTransformationContext context,
@@ -62,9 +80,7 @@ public class JIRAMacroTransformation<P> implements org.xwiki.contrib.jira.macro.
             return blocks;
         }
 
-        if (!licensor.hasLicensure(
-            new DocumentReference(xcontext.getWikiId(), List.of("XWiki", "JIRAPro", "OAuth"), "WebHome")))
-        {
+        if (!licenseChecker.hasLicensure()) {
             return List.of(new MacroBlock(
                 "missingLicenseMessage",
                 Map.of("extensionName", "com.xwiki.jirapro.oauth.extension.name"),
@@ -77,6 +93,9 @@ public class JIRAMacroTransformation<P> implements org.xwiki.contrib.jira.macro.
         if (authenticator.isAuthenticatingRequest()) {
             return blocks;
         }
+        if (!markNotified(context.getXDOM(), authenticator.getConfigurationName())) {
+            return authenticator.isRequiringAuthentication() ? List.of(getPlaceholder(context.isInline())) : blocks;
+        }
         if (authenticator.isRequiringAuthentication()) {
             return List.of(authenticator.getWarningMacroBlock(true, context.isInline(),
                 xcontext.getURL().toString()));
@@ -87,4 +106,25 @@ public class JIRAMacroTransformation<P> implements org.xwiki.contrib.jira.macro.
             return result;
         }
     }
+
+    private boolean markNotified(XDOM xdom, String configurationName)
+    {
+        // The mark is kept on the rendered XDOM itself, which is transformed by a single thread and lives only as long
+        // as the rendering.
+        if (xdom == null) {
+            return true;
+        }
+        String parameterName = NOTIFIED_PARAMETER_PREFIX + configurationName;
+        if (xdom.getParameter(parameterName) != null) {
+            return false;
+        }
+        xdom.setParameter(parameterName, Boolean.TRUE.toString());
+        return true;
+    }
+
+    private Block getPlaceholder(boolean isInline)
+    {
+        Map<String, String> parameters = Map.of(PLACEHOLDER_CLASS, PLACEHOLDER_CLASS_VALUE);
+        return isInline ? new FormatBlock(List.of(), Format.NONE, parameters) : new GroupBlock(parameters);
+    }
 }